@@ -0,0 +1,18 @@
+package searchengine.benchmark;
+
+import org.springframework.boot.SpringApplication;
+import searchengine.Application;
+
+/**
+ * Starts the application with the benchmark profile: {@link CrawlBenchmark} takes the measurement,
+ * then the process exits with code 0, or 1 if the benchmark failed.
+ *
+ * <p>Run: {@code mvn -Pbenchmark spring-boot:run -Dspring-boot.run.main-class=searchengine.benchmark.BenchmarkApplication}
+ */
+public class BenchmarkApplication {
+    public static void main(String[] args) {
+        SpringApplication application = new SpringApplication(Application.class);
+        application.setAdditionalProfiles("benchmark");
+        System.exit(SpringApplication.exit(application.run(args)));
+    }
+}
@@ -0,0 +1,33 @@
+package searchengine.benchmark;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Benchmark result. Saved as JSON so the next run can be compared with it.
+ */
+@Getter
+@Setter
+public class BenchmarkResult {
+    private String startedAt;
+    private int sites;
+    private int sitePages;
+    private int fanOut;
+    private int htmlSizeBytes;
+    private long latencyMedianMillis;
+    private long latencyP99Millis;
+    private double errorRate;
+
+    private long elapsedMillis;
+    private long pages;
+    private long pagesWritten;
+    private long rowsWritten;
+    private double pagesPerSecond;
+    private double rowsPerSecond;
+    private long heapPeakMb;
+    private double pageLatencyP50Millis;
+    private double pageLatencyP99Millis;
+    private long requestsServed;
+    private long errorsServed;
+    private int failedSites;
+}
@@ -0,0 +1,28 @@
+package searchengine.benchmark;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@Profile("benchmark")
+@ConfigurationProperties(prefix = "benchmark")
+public class BenchmarkSettings {
+    private int port = 18080;
+    private int sites = 1;
+    private int pages = 2000;
+    private int fanOut = 10;
+    private int htmlSizeBytes = 20_000;
+    private Resource corpus;
+    private long latencyMedianMillis = 20;
+    private long latencyP99Millis = 200;
+    private double errorRate = 0.01;
+    private long seed = 42;
+    private String resultFile = "benchmark-result.json";
+    private String baselineFile = "";
+}
@@ -0,0 +1,227 @@
+package searchengine.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.CrawlerSettings;
+import searchengine.config.Site;
+import searchengine.config.SitesList;
+import searchengine.exceptions.LoopSiteIndexationCustomException;
+import searchengine.scrapers.CrawlerHttpClient;
+import searchengine.services.IndexEntityCRUDService;
+import searchengine.services.LemmaCRUDService;
+import searchengine.services.MorphologyProvider;
+import searchengine.services.PageCRUDService;
+import searchengine.services.SiteCRUDService;
+import searchengine.services.indexers.CrawlMetrics;
+import searchengine.services.indexers.SitesIndexer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Indexing speed benchmark that needs no real sites: starts local {@link SyntheticSiteServer}s,
+ * indexes them through {@link SitesIndexer} writing to the database, and prints pages per second,
+ * database writes per second, the peak used heap and p50/p99 of the page processing time.
+ * The result is saved to resultFile and compared with baselineFile.
+ *
+ * <p>Writes to the separate database from application-benchmark.yaml. Runs through {@link BenchmarkApplication}.
+ */
+@Component
+@Profile("benchmark")
+public class CrawlBenchmark implements CommandLineRunner, ExitCodeGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(CrawlBenchmark.class);
+    private static final long HEAP_SAMPLE_INTERVAL_MILLIS = 50;
+
+    private final BenchmarkSettings settings;
+    private final CrawlerSettings crawlerSettings;
+    private final CrawlerHttpClient httpClient;
+    private final SiteCRUDService siteCRUDService;
+    private final PageCRUDService pageCRUDService;
+    private final LemmaCRUDService lemmaCRUDService;
+    private final IndexEntityCRUDService indexEntityCRUDService;
+    private final MorphologyProvider morphologyProvider;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private int exitCode = 0;
+
+    public CrawlBenchmark(BenchmarkSettings settings, CrawlerSettings crawlerSettings, CrawlerHttpClient httpClient,
+                          SiteCRUDService siteCRUDService, PageCRUDService pageCRUDService,
+                          LemmaCRUDService lemmaCRUDService, IndexEntityCRUDService indexEntityCRUDService,
+                          MorphologyProvider morphologyProvider, PlatformTransactionManager transactionManager) {
+        this.settings = settings;
+        this.crawlerSettings = crawlerSettings;
+        this.httpClient = httpClient;
+        this.siteCRUDService = siteCRUDService;
+        this.pageCRUDService = pageCRUDService;
+        this.lemmaCRUDService = lemmaCRUDService;
+        this.indexEntityCRUDService = indexEntityCRUDService;
+        this.morphologyProvider = morphologyProvider;
+        this.transactionManager = transactionManager;
+    }
+
+    @Override
+    public void run(String... args) {
+        try {
+            BenchmarkResult result = runBenchmark();
+            report(result);
+        } catch (Exception e) {
+            logger.error("Benchmark failed", e);
+            exitCode = 1;
+        }
+    }
+
+    @Override
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    private BenchmarkResult runBenchmark() throws Exception {
+        List<String> words = readCorpus();
+        List<SyntheticSiteServer> servers = new ArrayList<>();
+        SitesList sitesList = new SitesList();
+        sitesList.setSites(new ArrayList<>());
+        try {
+            for (int i = 0; i < settings.getSites(); i++) {
+                SyntheticSiteServer server = new SyntheticSiteServer(settings.getPort() + i, settings, words,
+                        settings.getSeed() + i);
+                server.start();
+                servers.add(server);
+                Site site = new Site();
+                site.setUrl(server.getUrl());
+                site.setName("Benchmark " + (i + 1));
+                sitesList.getSites().add(site);
+            }
+            SitesIndexer sitesIndexer = new SitesIndexer(siteCRUDService, pageCRUDService, lemmaCRUDService,
+                    indexEntityCRUDService, crawlerSettings, httpClient, morphologyProvider.getLemmaFinder(),
+                    new TransactionTemplate(transactionManager));
+            logger.info("Benchmark: {} sites of {} pages, fan-out {}, {} bytes per page, latency p50 {} ms, p99 {} ms, "
+                            + "error rate {}", settings.getSites(), settings.getPages(), settings.getFanOut(),
+                    settings.getHtmlSizeBytes(), settings.getLatencyMedianMillis(), settings.getLatencyP99Millis(),
+                    settings.getErrorRate());
+
+            BenchmarkResult result = new BenchmarkResult();
+            result.setStartedAt(LocalDateTime.now().toString());
+            System.gc(); // the heap peak should not depend on what the startup left behind
+            AtomicLong heapPeak = new AtomicLong(0);
+            ScheduledExecutorService heapSampler = Executors.newSingleThreadScheduledExecutor();
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            heapSampler.scheduleAtFixedRate(() -> heapPeak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(),
+                    Math::max), 0, HEAP_SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            try {
+                sitesIndexer.indexSites(sitesList);
+            } catch (LoopSiteIndexationCustomException e) {
+                result.setFailedSites(e.getCauses().size());
+                logger.warn("Benchmark: {} sites failed: {}", result.getFailedSites(), e.getCauses().keySet());
+            } finally {
+                heapSampler.shutdownNow();
+            }
+            fillResult(result, sitesIndexer.getMetrics(), heapPeak.get(), servers);
+            return result;
+        } finally {
+            servers.forEach(SyntheticSiteServer::close);
+        }
+    }
+
+    private void fillResult(BenchmarkResult result, CrawlMetrics metrics, long heapPeakBytes,
+                            List<SyntheticSiteServer> servers) {
+        result.setSites(settings.getSites());
+        result.setSitePages(settings.getPages());
+        result.setFanOut(settings.getFanOut());
+        result.setHtmlSizeBytes(settings.getHtmlSizeBytes());
+        result.setLatencyMedianMillis(settings.getLatencyMedianMillis());
+        result.setLatencyP99Millis(settings.getLatencyP99Millis());
+        result.setErrorRate(settings.getErrorRate());
+        result.setElapsedMillis(metrics.getElapsedMillis());
+        result.setPages(metrics.getPages());
+        result.setPagesWritten(metrics.getPagesWritten());
+        result.setRowsWritten(metrics.getRowsWritten());
+        result.setPagesPerSecond(round(metrics.perSecond(metrics.getPages())));
+        result.setRowsPerSecond(round(metrics.perSecond(metrics.getRowsWritten())));
+        result.setHeapPeakMb(heapPeakBytes / (1024 * 1024));
+        result.setPageLatencyP50Millis(round(metrics.getPageLatency().percentileNanos(50) / 1e6));
+        result.setPageLatencyP99Millis(round(metrics.getPageLatency().percentileNanos(99) / 1e6));
+        for (SyntheticSiteServer server : servers) {
+            result.setRequestsServed(result.getRequestsServed() + server.getRequests());
+            result.setErrorsServed(result.getErrorsServed() + server.getErrors());
+        }
+    }
+
+    private void report(BenchmarkResult result) throws IOException {
+        BenchmarkResult baseline = null;
+        if (!settings.getBaselineFile().isEmpty()) {
+            File baselineFile = new File(settings.getBaselineFile());
+            if (baselineFile.isFile()) {
+                baseline = objectMapper.readValue(baselineFile, BenchmarkResult.class);
+            } else {
+                logger.warn("Baseline file '{}' not found", baselineFile.getAbsolutePath());
+            }
+        }
+        logger.info("Benchmark: {} pages ({} written to DB) in {} ms, {} requests served, {} of them errors",
+                result.getPages(), result.getPagesWritten(), result.getElapsedMillis(), result.getRequestsServed(),
+                result.getErrorsServed());
+        logMetric("pages/s", result.getPagesPerSecond(), baseline == null ? null : baseline.getPagesPerSecond());
+        logMetric("DB rows/s", result.getRowsPerSecond(), baseline == null ? null : baseline.getRowsPerSecond());
+        logMetric("heap peak, MB", result.getHeapPeakMb(), baseline == null ? null : (double) baseline.getHeapPeakMb());
+        logMetric("page latency p50, ms", result.getPageLatencyP50Millis(),
+                baseline == null ? null : baseline.getPageLatencyP50Millis());
+        logMetric("page latency p99, ms", result.getPageLatencyP99Millis(),
+                baseline == null ? null : baseline.getPageLatencyP99Millis());
+        if (!settings.getResultFile().isEmpty()) {
+            File resultFile = new File(settings.getResultFile());
+            objectMapper.writeValue(resultFile, result);
+            logger.info("Benchmark result saved to '{}'", resultFile.getAbsolutePath());
+        }
+    }
+
+    private static void logMetric(String name, double value, Double baseline) {
+        if (baseline == null || baseline == 0) {
+            logger.info("  {}: {}", name, value);
+        } else {
+            logger.info("  {}: {} (baseline {}, {}%)", name, value, baseline,
+                    String.format("%+.1f", (value - baseline) * 100 / baseline));
+        }
+    }
+
+    private List<String> readCorpus() throws IOException {
+        List<String> words = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(settings.getCorpus().getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                for (String word : line.split("[^\\p{L}\\p{Nd}-]+")) {
+                    if (!word.isEmpty()) {
+                        words.add(word);
+                    }
+                }
+            }
+        }
+        if (words.isEmpty()) {
+            throw new IOException("Corpus '" + settings.getCorpus().getDescription() + "' has no words");
+        }
+        return words;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+}
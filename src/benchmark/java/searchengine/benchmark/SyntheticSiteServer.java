@@ -0,0 +1,170 @@
+package searchengine.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local site for benchmarks: pages are generated from a text corpus and are the same for the
+ * same seed. A page links to the next one, so every page is reachable from the main page,
+ * and to fanOut - 1 random ones. The response time is log-normal by the median and the 99th
+ * percentile, an errorRate share of requests gets 503.
+ */
+public class SyntheticSiteServer implements AutoCloseable {
+    private static final Pattern PAGE_PATH = Pattern.compile("/articles/page-(\\d+)/?");
+    // the 99th percentile of the standard normal distribution
+    private static final double Z_99 = 2.326;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final BenchmarkSettings settings;
+    private final List<String> words;
+    private final long seed;
+    private final double latencySigma;
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong errors = new AtomicLong(0);
+
+    public SyntheticSiteServer(int port, BenchmarkSettings settings, List<String> words, long seed) throws IOException {
+        this.settings = settings;
+        this.words = words;
+        this.seed = seed;
+        long median = settings.getLatencyMedianMillis();
+        long p99 = settings.getLatencyP99Millis();
+        this.latencySigma = median > 0 && p99 > median ? Math.log((double) p99 / median) / Z_99 : 0;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        // every request sleeps for its latency, so requests must not wait for each other
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "synthetic-site-" + port);
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            sleepLatency();
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/robots.txt")) {
+                send(exchange, 200, "text/plain", "User-agent: *\nAllow: /\n");
+                return;
+            }
+            int page = pageNumber(path);
+            if (page < 0) {
+                send(exchange, 404, "text/plain", "Not found");
+                return;
+            }
+            if (ThreadLocalRandom.current().nextDouble() < settings.getErrorRate()) {
+                errors.incrementAndGet();
+                send(exchange, 503, "text/plain", "Service unavailable");
+                return;
+            }
+            send(exchange, 200, "text/html; charset=utf-8", render(page));
+        }
+    }
+
+    private int pageNumber(String path) {
+        if (path.equals("/")) {
+            return 0;
+        }
+        Matcher matcher = PAGE_PATH.matcher(path);
+        if (!matcher.matches()) {
+            return -1;
+        }
+        int page = Integer.parseInt(matcher.group(1));
+        return page < settings.getPages() ? page : -1;
+    }
+
+    private void sleepLatency() {
+        if (settings.getLatencyMedianMillis() <= 0) {
+            return;
+        }
+        double latency = settings.getLatencyMedianMillis()
+                * Math.exp(latencySigma * ThreadLocalRandom.current().nextGaussian());
+        try {
+            Thread.sleep(Math.round(latency));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String render(int page) {
+        Random random = new Random(seed * 1_000_003 + page);
+        StringBuilder html = new StringBuilder(settings.getHtmlSizeBytes() + 1024);
+        String title = sentence(random, 4);
+        html.append("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>").append(title)
+                .append("</title></head><body><h1>").append(title).append("</h1>");
+        int links = Math.max(1, settings.getFanOut());
+        int linksWritten = 0;
+        while (html.length() < settings.getHtmlSizeBytes() || linksWritten < links) {
+            html.append("<p>").append(sentence(random, 12 + random.nextInt(30)));
+            if (linksWritten < links) {
+                int target = linksWritten == 0 ? (page + 1) % settings.getPages() : random.nextInt(settings.getPages());
+                html.append(" <a href=\"").append(path(target)).append("\">").append(sentence(random, 2)).append("</a>");
+                linksWritten++;
+            }
+            html.append("</p>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    private String sentence(Random random, int wordCount) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < wordCount; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(words.get(random.nextInt(words.size())));
+        }
+        return sentence.toString();
+    }
+
+    private static String path(int page) {
+        return page == 0 ? "/" : "/articles/page-" + page + "/";
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawler-settings")
+public class CrawlerSettings {
+    private boolean incrementalIndexing = false;
+    private int maxConcurrentSites = 4;
+    private int globalConcurrency = 32;
+    private int siteConcurrency = 8;
+    private boolean adaptiveConcurrency = true;
+    private int siteMinConcurrency = 1;
+    private int siteInitialConcurrency = 2;
+    private int fetchThreads = 32;
+    private int parseThreads = Runtime.getRuntime().availableProcessors();
+    private int writerThreads = 2;
+    private int stageQueueCapacity = 256;
+    private int writeBatchSize = 50;
+    private int maxDepth = 0;
+    private int maxPages = 0;
+    private long maxBytes = 0;
+    private long maxCrawlMinutes = 0;
+    private int frontierCapacity = 100_000;
+    private boolean http2 = true;
+    private int connectTimeoutMillis = 10_000;
+    private int requestTimeoutMillis = 30_000;
+    private int bodyTimeoutMillis = 120_000;
+    private int maxConnectionsPerHost = 8;
+    private int maxBodySize = 5 * 1024 * 1024;
+    private long hostMinDelayMillis = 100;
+    private long hostMaxDelayMillis = 30_000;
+    private int hostBurst = 4;
+    private boolean respectRobotsTxt = true;
+    private boolean visitedBloomFilter = false;
+    private long visitedExpectedUrls = 1_000_000;
+    private double visitedFalsePositiveRate = 0.001;
+    private boolean crawlQueryUrls = false;
+    private boolean nearDuplicateDetection = true;
+    private int nearDuplicateMaxDistance = 3;
+    private boolean sitemapSeeding = true;
+    private int sitemapMaxFiles = 50;
+    private int sitemapMaxUrls = 50_000;
+    private String checkpointDir = "checkpoints";
+    private long checkpointIntervalSeconds = 60;
+    private long hostErrorWindowSeconds = 60;
+    private int hostErrorMinRequests = 20;
+    private double hostMaxErrorRate = 0.5;
+    private long hostPauseSeconds = 30;
+    private long hostMaxPauseSeconds = 300;
+    private int hostMaxFailedProbes = 3;
+    private long siteErrorWindowSeconds = 300;
+    private int siteErrorMinRequests = 100;
+    private double siteMaxErrorRate = 0.8;
+    private int maxRetries = 3;
+    private long retryBaseDelayMillis = 2_000;
+    private long retryMaxDelayMillis = 60_000;
+    private boolean trapDetection = true;
+    private int trapMinSamples = 20;
+    private double trapMinNewContentRate = 0.1;
+    private int trapMaxSegmentRepeats = 2;
+    private int trapMaxPathSegments = 15;
+    private boolean responseArchive = false;
+    private String archiveDir = "archive";
+    private long archiveSegmentBytes = 1024L * 1024 * 1024;
+    private boolean replayFromArchive = false;
+}
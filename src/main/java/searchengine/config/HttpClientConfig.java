@@ -0,0 +1,23 @@
+package searchengine.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import searchengine.scrapers.CrawlerHttpClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+@Configuration
+public class HttpClientConfig {
+
+    @Bean
+    public CrawlerHttpClient crawlerHttpClient(CrawlerSettings crawlerSettings) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(crawlerSettings.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(crawlerSettings.getConnectTimeoutMillis()))
+                .build();
+        return new CrawlerHttpClient(httpClient, Duration.ofMillis(crawlerSettings.getRequestTimeoutMillis()),
+                Duration.ofMillis(crawlerSettings.getBodyTimeoutMillis()), crawlerSettings.getMaxConnectionsPerHost());
+    }
+}
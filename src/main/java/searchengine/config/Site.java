@@ -8,4 +8,9 @@ import lombok.Setter;
 public class Site {
     private String url;
     private String name;
+    // crawl budget of the site, overrides crawler-settings when set
+    private Integer maxDepth;
+    private Integer maxPages;
+    private Long maxBytes;
+    private Long maxCrawlMinutes;
 }
@@ -45,6 +45,7 @@ public class ApiController {
     private final LemmaCRUDService lemmaCRUDService;
 
     private final SearchService searchService;
+    private final MorphologyProvider morphologyProvider;
     private final SitesList sitesList;
 
     private final IndexEntityCRUDService indexEntityCRUDService;
@@ -232,7 +233,8 @@ public class ApiController {
                 String title = HtmlTextUtilities.extractTitle(htmlCodePage);
                 pageData.put("title", title);
     //                String snippet = "";
-                String snippet = HtmlTextUtilities.extractSnippetContainingWord(htmlCodePage, query);
+                String snippet = HtmlTextUtilities.extractSnippetContainingWord(htmlCodePage, query,
+                        morphologyProvider.getLemmaFinder());
 //                if (snippet.isEmpty()) { // don't show the page if the snippet is empty
 //                    i++;
 //                    continue;
@@ -0,0 +1,30 @@
+package searchengine.dto.entities;
+
+import lombok.Getter;
+
+/**
+ * What needs to be known about a saved page on reindexing, without its content.
+ */
+@Getter
+public class PageValidatorsDTO {
+    private final int id;
+    private final String path;
+    private final int code;
+    private final String etag;
+    private final String lastModified;
+    private final String contentHash;
+    private final Long simhash;
+    private final String aliasOf;
+
+    public PageValidatorsDTO(int id, String path, int code, String etag, String lastModified, String contentHash,
+                             Long simhash, String aliasOf) {
+        this.id = id;
+        this.path = path;
+        this.code = code;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+        this.simhash = simhash;
+        this.aliasOf = aliasOf;
+    }
+}
@@ -33,6 +33,24 @@ public class Page {
     @Column(name = "content", columnDefinition = "MEDIUMTEXT")
     private String content;
 
+    // validators of the last response, sent back on re-indexing as If-None-Match / If-Modified-Since
+    @Column(name = "etag", columnDefinition = "VARCHAR(255)")
+    private String etag;
+
+    @Column(name = "last_modified", columnDefinition = "VARCHAR(64)")
+    private String lastModified;
+
+    @Column(name = "content_hash", columnDefinition = "VARCHAR(64)")
+    private String contentHash;
+
+    // SimHash of the page text, used to find near-duplicate pages of the site
+    @Column(name = "simhash")
+    private Long simhash;
+
+    // path of the page this one nearly duplicates; such a page has no index rows of its own
+    @Column(name = "alias_of", columnDefinition = "TEXT")
+    private String aliasOf;
+
 //    @JsonManagedReference
     @OneToMany(mappedBy = "page", cascade = CascadeType.REMOVE, fetch = FetchType.LAZY)
     private List<IndexEntity> indexList;
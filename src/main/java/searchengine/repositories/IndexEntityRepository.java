@@ -1,13 +1,16 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.IndexEntity;
 import searchengine.model.Lemma;
 import searchengine.model.Page;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -28,4 +31,12 @@ public interface IndexEntityRepository extends JpaRepository<IndexEntity, Intege
     boolean existsByPageAndLemma(Page page, Lemma lemma);
 
     void deleteByPageAndLemma(Page page, Lemma lemma);
+
+    @Query("SELECT i.lemma.id FROM IndexEntity i WHERE i.page.id IN :pageIds")
+    List<Integer> findLemmaIdsByPageIds(@Param("pageIds") Collection<Integer> pageIds);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM IndexEntity i WHERE i.page.id IN :pageIds")
+    void deleteByPageIds(@Param("pageIds") Collection<Integer> pageIds);
 }
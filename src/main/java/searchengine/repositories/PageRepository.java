@@ -1,9 +1,12 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.dto.entities.PageValidatorsDTO;
 import searchengine.model.Page;
 import searchengine.model.SiteEntity;
 
@@ -25,6 +28,17 @@ public interface PageRepository extends JpaRepository<Page, Integer> {
 
     Optional<Integer> countPagesBySiteId(int siteId);
 
+    @Query("SELECT new searchengine.dto.entities.PageValidatorsDTO(p.id, p.path, p.code, p.etag, p.lastModified, p.contentHash, " +
+            "p.simhash, p.aliasOf) " +
+            "FROM Page p WHERE p.site.id = :siteId")
+    List<PageValidatorsDTO> findValidatorsBySiteId(@Param("siteId") int siteId);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Page p SET p.etag = :etag, p.lastModified = :lastModified WHERE p.id = :pageId")
+    void updateValidators(@Param("pageId") int pageId, @Param("etag") String etag,
+                          @Param("lastModified") String lastModified);
+
     @Query(value = """
         SELECT p.*
         FROM page p
@@ -0,0 +1,96 @@
+package searchengine.scrapers;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over 64-bit fingerprints. Takes a fixed amount of memory, gives no false
+ * negatives and errs towards "already seen" with the given probability.
+ */
+public class BloomFilter {
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long expected = Math.max(1, expectedInsertions);
+        long bits = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) / 64));
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = wordCount * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expected * Math.log(2)));
+    }
+
+    private BloomFilter(AtomicLongArray words, int hashCount) {
+        this.words = words;
+        this.bitCount = words.length() * 64L;
+        this.hashCount = hashCount;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(hashCount);
+        out.writeInt(words.length());
+        for (int i = 0; i < words.length(); i++) {
+            out.writeLong(words.get(i));
+        }
+    }
+
+    public static BloomFilter readFrom(DataInput in) throws IOException {
+        int hashCount = in.readInt();
+        AtomicLongArray words = new AtomicLongArray(in.readInt());
+        for (int i = 0; i < words.length(); i++) {
+            words.set(i, in.readLong());
+        }
+        return new BloomFilter(words, hashCount);
+    }
+
+    public boolean mightContain(long fingerprint) {
+        long h2 = (fingerprint >>> 32) | 1;
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = bitIndex(fingerprint + i * h2);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if at least one bit was set by this call, that is, the fingerprint is surely new
+     */
+    public boolean put(long fingerprint) {
+        long h2 = (fingerprint >>> 32) | 1;
+        boolean changed = false;
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = bitIndex(fingerprint + i * h2);
+            int wordIndex = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word;
+            do {
+                word = words.get(wordIndex);
+                if ((word & mask) != 0) {
+                    break;
+                }
+            } while (!words.compareAndSet(wordIndex, word, word | mask));
+            changed |= (word & mask) == 0;
+        }
+        return changed;
+    }
+
+    /**
+     * @return the probability that a fingerprint never put is reported as contained, at the current fill
+     */
+    public double falsePositiveRate() {
+        long setBits = 0;
+        for (int i = 0; i < words.length(); i++) {
+            setBits += Long.bitCount(words.get(i));
+        }
+        return Math.pow((double) setBits / bitCount, hashCount);
+    }
+
+    private long bitIndex(long combinedHash) {
+        return (combinedHash & Long.MAX_VALUE) % bitCount;
+    }
+}
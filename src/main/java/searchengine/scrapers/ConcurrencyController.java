@@ -0,0 +1,101 @@
+package searchengine.scrapers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How many pages of a site are downloaded at the same time. The limit follows AIMD: while
+ * the site answers fast and without errors, the limit grows by about one per "round" of
+ * requests, and on 429/503, timeouts, connection errors and 5xx, as well as on a sharp rise
+ * in response time, it shrinks several times. So every site is crawled at the highest speed
+ * it can handle.
+ */
+public class ConcurrencyController {
+    private static final double THROTTLE_DECREASE = 0.5;
+    private static final double ERROR_DECREASE = 0.7;
+    private static final double SLOW_DOWN_DECREASE = 0.9;
+    // a response this many times slower than the usual one means the host is overloaded
+    private static final double LATENCY_TOLERANCE = 2.0;
+    // the baseline follows a host that has become slower for good, but slowly
+    private static final double BASELINE_DRIFT = 0.01;
+    // failures of requests sent at the same time are one signal, not several
+    private static final long DECREASE_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final boolean adaptive;
+    private double limit;
+    private int inFlight = 0;
+    private double baselineLatencyNanos = 0;
+    private long lastDecreaseNanos = System.nanoTime() - DECREASE_COOLDOWN_NANOS;
+
+    /**
+     * @param adaptive false - the limit always equals maxLimit
+     */
+    public ConcurrencyController(int minLimit, int initialLimit, int maxLimit, boolean adaptive) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.minLimit = Math.max(1, Math.min(minLimit, this.maxLimit));
+        this.adaptive = adaptive;
+        this.limit = adaptive ? Math.max(this.minLimit, Math.min(initialLimit, this.maxLimit)) : this.maxLimit;
+    }
+
+    /**
+     * Waits until the number of pages of the site being downloaded drops below the limit.
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    public synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Counts a response of the site.
+     *
+     * @param statusCode response status code or -1 if there was no response (timeout, connection error)
+     */
+    public synchronized void onResponse(int statusCode, long latencyNanos) {
+        if (!adaptive) {
+            return;
+        }
+        if (statusCode < 0 || statusCode == 429 || statusCode == 503) {
+            decrease(THROTTLE_DECREASE);
+            return;
+        }
+        if (statusCode >= 500) {
+            decrease(ERROR_DECREASE);
+            return;
+        }
+        if (baselineLatencyNanos == 0 || latencyNanos < baselineLatencyNanos) {
+            baselineLatencyNanos = latencyNanos;
+        } else {
+            baselineLatencyNanos += (latencyNanos - baselineLatencyNanos) * BASELINE_DRIFT;
+        }
+        if (latencyNanos > baselineLatencyNanos * LATENCY_TOLERANCE) {
+            decrease(SLOW_DOWN_DECREASE);
+        } else {
+            double previous = limit;
+            limit = Math.min(maxLimit, limit + 1 / limit);
+            if ((int) limit > (int) previous) {
+                notifyAll();
+            }
+        }
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    private void decrease(double factor) {
+        long now = System.nanoTime();
+        if (now - lastDecreaseNanos < DECREASE_COOLDOWN_NANOS) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        limit = Math.max(minLimit, limit * factor);
+    }
+}
@@ -0,0 +1,98 @@
+package searchengine.scrapers;
+
+import searchengine.config.CrawlerSettings;
+import searchengine.config.Site;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Crawl budget of one site: depth, number of pages, downloaded bytes and time. Zero means
+ * "no limit". The values come from crawler-settings, and a site in indexing-settings can
+ * override them.
+ */
+public class CrawlBudget {
+    private final int maxDepth;
+    private final int maxPages;
+    private final long maxBytes;
+    private final long maxNanos;
+    private volatile long startNanos = System.nanoTime();
+    private final AtomicInteger pages = new AtomicInteger(0);
+    private final AtomicLong bytes = new AtomicLong(0);
+
+    public CrawlBudget(int maxDepth, int maxPages, long maxBytes, long maxMinutes) {
+        this.maxDepth = maxDepth;
+        this.maxPages = maxPages;
+        this.maxBytes = maxBytes;
+        this.maxNanos = TimeUnit.MINUTES.toNanos(maxMinutes);
+    }
+
+    public static CrawlBudget unlimited() {
+        return new CrawlBudget(0, 0, 0, 0);
+    }
+
+    /**
+     * @param site site from indexing-settings or null
+     */
+    public static CrawlBudget of(CrawlerSettings crawlerSettings, Site site) {
+        return new CrawlBudget(
+                site != null && site.getMaxDepth() != null ? site.getMaxDepth() : crawlerSettings.getMaxDepth(),
+                site != null && site.getMaxPages() != null ? site.getMaxPages() : crawlerSettings.getMaxPages(),
+                site != null && site.getMaxBytes() != null ? site.getMaxBytes() : crawlerSettings.getMaxBytes(),
+                site != null && site.getMaxCrawlMinutes() != null
+                        ? site.getMaxCrawlMinutes() : crawlerSettings.getMaxCrawlMinutes());
+    }
+
+    /**
+     * Starts the crawl timer.
+     */
+    public void start() {
+        startNanos = System.nanoTime();
+    }
+
+    public boolean allowsDepth(int depth) {
+        return maxDepth <= 0 || depth <= maxDepth;
+    }
+
+    /**
+     * Takes budget for one more page.
+     *
+     * @return false if as many pages as allowed are already downloaded
+     */
+    public boolean tryAcquirePage() {
+        if (maxPages <= 0) {
+            pages.incrementAndGet();
+            return true;
+        }
+        return pages.getAndUpdate(count -> count < maxPages ? count + 1 : count) < maxPages;
+    }
+
+    public void addBytes(long count) {
+        bytes.addAndGet(count);
+    }
+
+    /**
+     * @return why the budget is spent, or null if it is not yet
+     */
+    public String exhaustedReason() {
+        if (maxPages > 0 && pages.get() >= maxPages) {
+            return "page limit of " + maxPages + " reached";
+        }
+        if (maxBytes > 0 && bytes.get() >= maxBytes) {
+            return "byte limit of " + maxBytes + " reached";
+        }
+        if (maxNanos > 0 && System.nanoTime() - startNanos >= maxNanos) {
+            return "time limit of " + TimeUnit.NANOSECONDS.toMinutes(maxNanos) + " min reached";
+        }
+        return null;
+    }
+
+    public int getPages() {
+        return pages.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+}
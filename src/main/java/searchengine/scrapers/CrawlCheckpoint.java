@@ -0,0 +1,23 @@
+package searchengine.scrapers;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * State of an interrupted site crawl: which URLs are already found and which are still to be crawled.
+ */
+@Getter
+public class CrawlCheckpoint {
+    private final String siteUrl;
+    private final long savedAt;
+    private final VisitedUrlSet visitedUrls;
+    private final List<CrawlRequest> requests;
+
+    public CrawlCheckpoint(String siteUrl, long savedAt, VisitedUrlSet visitedUrls, List<CrawlRequest> requests) {
+        this.siteUrl = siteUrl;
+        this.savedAt = savedAt;
+        this.visitedUrls = visitedUrls;
+        this.requests = requests;
+    }
+}
@@ -0,0 +1,107 @@
+package searchengine.scrapers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps crawl checkpoints in local files, one per site. A file is written to a temporary one
+ * and then renamed, so a crash during the write does not spoil the previous checkpoint.
+ *
+ * <p>Format (gzip): MAGIC, VERSION, site URL, write time, the set of found URLs
+ * ({@link VisitedUrlSet#writeTo}), the number of requests and "URL, depth" pairs.
+ */
+public class CrawlCheckpointStore {
+    private static final Logger logger = LoggerFactory.getLogger(CrawlCheckpointStore.class);
+    private static final int MAGIC = 0x43524b50; // "CRKP"
+    private static final int VERSION = 1;
+
+    private final Path directory;
+
+    public CrawlCheckpointStore(Path directory) {
+        this.directory = directory;
+    }
+
+    public void save(CrawlCheckpoint checkpoint) throws IOException {
+        Files.createDirectories(directory);
+        Path target = fileOf(checkpoint.getSiteUrl());
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(temporary))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(checkpoint.getSiteUrl());
+            out.writeLong(checkpoint.getSavedAt());
+            checkpoint.getVisitedUrls().writeTo(out);
+            out.writeInt(checkpoint.getRequests().size());
+            for (CrawlRequest request : checkpoint.getRequests()) {
+                out.writeUTF(request.getUrl().toString());
+                out.writeInt(request.getDepth());
+            }
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the site checkpoint or an empty Optional if there is none or the file cannot be read
+     */
+    public Optional<CrawlCheckpoint> load(String siteUrl) {
+        Path file = fileOf(siteUrl);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn("Checkpoint '{}' has an unknown format and is ignored", file);
+                return Optional.empty();
+            }
+            String savedSiteUrl = in.readUTF();
+            if (!savedSiteUrl.equals(siteUrl)) {
+                logger.warn("Checkpoint '{}' belongs to site '{}' and is ignored", file, savedSiteUrl);
+                return Optional.empty();
+            }
+            long savedAt = in.readLong();
+            VisitedUrlSet visitedUrls = VisitedUrlSet.readFrom(in);
+            int requestCount = in.readInt();
+            List<CrawlRequest> requests = new ArrayList<>(requestCount);
+            for (int i = 0; i < requestCount; i++) {
+                String url = in.readUTF();
+                int depth = in.readInt();
+                try {
+                    requests.add(new CrawlRequest(new URL(url), depth));
+                } catch (MalformedURLException e) {
+                    logger.debug("Skipped malformed url '{}' in checkpoint", url);
+                }
+            }
+            return Optional.of(new CrawlCheckpoint(siteUrl, savedAt, visitedUrls, requests));
+        } catch (IOException e) {
+            logger.warn("Failed to read checkpoint '{}', the site will be crawled from the start", file, e);
+            return Optional.empty();
+        }
+    }
+
+    public void delete(String siteUrl) {
+        try {
+            Files.deleteIfExists(fileOf(siteUrl));
+        } catch (IOException e) {
+            logger.warn("Failed to delete checkpoint of site '{}'", siteUrl, e);
+        }
+    }
+
+    private Path fileOf(String siteUrl) {
+        String readablePart = siteUrl.replaceFirst("^https?://", "").replaceAll("[^A-Za-z0-9.-]", "_");
+        return directory.resolve(readablePart + "-" + Long.toHexString(UrlFingerprint.of(siteUrl)) + ".ckpt");
+    }
+}
@@ -0,0 +1,151 @@
+package searchengine.scrapers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue of URLs still to be crawled. The most valuable pages come first: shallow ones and
+ * the ones many links lead to (every {@value #INLINKS_PER_LEVEL} links are worth one depth
+ * level), pages of equal value in the order they were added.
+ * The queue is bounded; when it is full, the least valuable URL is dropped.
+ */
+public class CrawlFrontier {
+    private static final Logger logger = LoggerFactory.getLogger(CrawlFrontier.class);
+    private static final int INLINKS_PER_LEVEL = 4;
+    // beyond this a page is linked from every template, more links say nothing new
+    private static final int MAX_COUNTED_INLINKS = 64;
+
+    private final TreeSet<Entry> queue = new TreeSet<>(
+            Comparator.comparingDouble((Entry entry) -> entry.priority)
+                    .thenComparingLong(entry -> entry.sequence));
+    private final Map<String, Entry> entriesByUrl = new HashMap<>();
+    private final int capacity;
+    private long sequence = 0;
+    private int droppedCount = 0;
+
+    public CrawlFrontier(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return false if the queue was full and one URL - this one or a less valuable one - was dropped
+     */
+    public synchronized boolean offer(CrawlRequest request) {
+        Entry entry = new Entry(request, sequence++);
+        if (queue.size() >= capacity) {
+            Entry worst = queue.last();
+            droppedCount++;
+            if (queue.comparator().compare(entry, worst) >= 0) {
+                logger.debug("Frontier is full ({}), dropped: {}", capacity, request);
+                return false;
+            }
+            remove(worst);
+            logger.debug("Frontier is full ({}), dropped: {}", capacity, worst.request);
+            add(entry);
+            return false;
+        }
+        add(entry);
+        return true;
+    }
+
+    /**
+     * Counts one more link to a URL waiting in the queue; it moves closer to the head.
+     */
+    public synchronized void addInlink(String url) {
+        Entry entry = entriesByUrl.get(url);
+        if (entry == null || entry.inlinks >= MAX_COUNTED_INLINKS) {
+            return;
+        }
+        queue.remove(entry);
+        entry.inlinks++;
+        entry.updatePriority();
+        queue.add(entry);
+    }
+
+    /**
+     * Waits for the next URL no longer than timeout.
+     *
+     * @return the next URL or null if the queue stayed empty
+     */
+    public synchronized CrawlRequest poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (queue.isEmpty()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        Entry entry = queue.first();
+        remove(entry);
+        return entry.request;
+    }
+
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    /**
+     * @return how many URLs were dropped because of overflow; if more than zero, the crawl was incomplete
+     */
+    public synchronized int getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return a copy of the queue contents, for a checkpoint for example
+     */
+    public synchronized List<CrawlRequest> snapshot() {
+        List<CrawlRequest> requests = new ArrayList<>(queue.size());
+        for (Entry entry : queue) {
+            requests.add(entry.request);
+        }
+        return requests;
+    }
+
+    /**
+     * @return how many URLs were in the queue
+     */
+    public synchronized int clear() {
+        int size = queue.size();
+        queue.clear();
+        entriesByUrl.clear();
+        return size;
+    }
+
+    private void add(Entry entry) {
+        queue.add(entry);
+        entriesByUrl.put(entry.request.getUrl().toString(), entry);
+        notifyAll();
+    }
+
+    private void remove(Entry entry) {
+        queue.remove(entry);
+        entriesByUrl.remove(entry.request.getUrl().toString());
+    }
+
+    private static class Entry {
+        private final CrawlRequest request;
+        private final long sequence;
+        private int inlinks = 1;
+        private double priority;
+
+        private Entry(CrawlRequest request, long sequence) {
+            this.request = request;
+            this.sequence = sequence;
+            updatePriority();
+        }
+
+        private void updatePriority() {
+            priority = request.getDepth() - (double) (inlinks - 1) / INLINKS_PER_LEVEL;
+        }
+    }
+}
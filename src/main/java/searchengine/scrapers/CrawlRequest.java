@@ -0,0 +1,40 @@
+package searchengine.scrapers;
+
+import lombok.Getter;
+
+import java.net.URL;
+import java.time.Instant;
+
+@Getter
+public class CrawlRequest {
+    private final URL url;
+    private final int depth;
+    // lastmod from sitemap.xml, null for pages found by links
+    private final Instant sitemapLastModified;
+    // 0 for the first fetch, then the number of the retry
+    private final int attempt;
+
+    public CrawlRequest(URL url, int depth) {
+        this(url, depth, null);
+    }
+
+    public CrawlRequest(URL url, int depth, Instant sitemapLastModified) {
+        this(url, depth, sitemapLastModified, 0);
+    }
+
+    private CrawlRequest(URL url, int depth, Instant sitemapLastModified, int attempt) {
+        this.url = url;
+        this.depth = depth;
+        this.sitemapLastModified = sitemapLastModified;
+        this.attempt = attempt;
+    }
+
+    public CrawlRequest nextAttempt() {
+        return new CrawlRequest(url, depth, sitemapLastModified, attempt + 1);
+    }
+
+    @Override
+    public String toString() {
+        return url + " (depth " + depth + (attempt > 0 ? ", retry " + attempt : "") + ")";
+    }
+}
@@ -0,0 +1,186 @@
+package searchengine.scrapers;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Finds crawl traps - parts of a site that produce endlessly many URLs with nearly empty
+ * content: calendars, catalog filter combinations, repeating path segments.
+ *
+ * <p>URLs are grouped by a path pattern in which numbers and identifiers are replaced with
+ * placeholders, and only the names of query parameters are kept ("/calendar/{n}/{n}/",
+ * "/catalog/?color&amp;size"); all parameter combinations of one path also make up a common
+ * pattern ("/catalog/?*"), so filter combinations do not split into many small patterns.
+ * For each pattern it counts how many of the recently parsed pages brought new content:
+ * were not a copy of another page and did not repeat text seen before. If fewer than a
+ * minNewContentRate share of minSamples pages of a pattern are new, the remaining URLs of the
+ * pattern are not crawled. URLs with a path segment repeated more than maxSegmentRepeats
+ * times or with more than maxPathSegments segments are dropped at once.
+ */
+public class CrawlTrapDetector {
+    private static final Pattern DIGITS = Pattern.compile("\\d+");
+    private static final Pattern HEX_ID = Pattern.compile("(?i)[0-9a-f-]{16,}");
+
+    private final int minSamples;
+    private final double minNewContentRate;
+    private final int maxSegmentRepeats;
+    private final int maxPathSegments;
+    private final Map<String, PatternStats> patterns = new ConcurrentHashMap<>();
+    private final Set<Long> textFingerprints = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param maxPathSegments 0 - the path depth is not limited
+     */
+    public CrawlTrapDetector(int minSamples, double minNewContentRate, int maxSegmentRepeats, int maxPathSegments) {
+        this.minSamples = Math.max(1, minSamples);
+        this.minNewContentRate = minNewContentRate;
+        this.maxSegmentRepeats = Math.max(1, maxSegmentRepeats);
+        this.maxPathSegments = maxPathSegments;
+    }
+
+    /**
+     * Checks a new, not yet visited URL and counts it in the pattern statistics.
+     *
+     * @return why the URL should not be crawled, or null
+     */
+    public String check(URL url) {
+        String reason = pathTrapReason(url.getPath());
+        if (reason != null) {
+            return reason;
+        }
+        String trappedPattern = null;
+        for (String pattern : patternsOf(url)) {
+            PatternStats stats = patterns.computeIfAbsent(pattern, key -> new PatternStats());
+            stats.discovered.incrementAndGet();
+            if (stats.trapped && trappedPattern == null) {
+                trappedPattern = pattern;
+            }
+        }
+        return trappedPattern == null ? null : "url pattern '" + trappedPattern + "' is a crawl trap";
+    }
+
+    /**
+     * @return true if the URL pattern was found to be a trap after the URL got into the queue
+     */
+    public boolean isTrapped(URL url) {
+        for (String pattern : patternsOf(url)) {
+            PatternStats stats = patterns.get(pattern);
+            if (stats != null && stats.trapped) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts a parsed page.
+     *
+     * @param textFingerprint fingerprint of the page text or null if the text was not parsed
+     * @return the pattern this page turned into a trap, or null
+     */
+    public String onPageParsed(URL url, boolean duplicate, Long textFingerprint) {
+        boolean newContent = !duplicate && (textFingerprint == null || textFingerprints.add(textFingerprint));
+        String trappedPattern = null;
+        for (String pattern : patternsOf(url)) {
+            PatternStats stats = patterns.computeIfAbsent(pattern, key -> new PatternStats());
+            if (stats.sample(newContent) && trappedPattern == null) {
+                trappedPattern = pattern;
+            }
+        }
+        return trappedPattern;
+    }
+
+    /**
+     * @return how many URLs of the pattern were found
+     */
+    public int getDiscoveredCount(String pattern) {
+        PatternStats stats = patterns.get(pattern);
+        return stats == null ? 0 : stats.discovered.get();
+    }
+
+    private String pathTrapReason(String path) {
+        Map<String, Integer> segmentCounts = new HashMap<>();
+        int segments = 0;
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            segments++;
+            int count = segmentCounts.merge(segment.toLowerCase(Locale.ROOT), 1, Integer::sum);
+            if (count > maxSegmentRepeats) {
+                return "path segment '" + segment + "' repeats " + count + " times";
+            }
+        }
+        if (maxPathSegments > 0 && segments > maxPathSegments) {
+            return "path has " + segments + " segments";
+        }
+        return null;
+    }
+
+    private static List<String> patternsOf(URL url) {
+        String pattern = patternOf(url);
+        int query = pattern.indexOf('?');
+        return query < 0 ? List.of(pattern) : List.of(pattern, pattern.substring(0, query) + "?*");
+    }
+
+    /**
+     * @return URL pattern: numbers in the path are replaced with {n}, long identifiers with {id},
+     * only the names are left of the query parameters
+     */
+    static String patternOf(URL url) {
+        StringBuilder pattern = new StringBuilder();
+        String path = url.getPath();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            pattern.append('/').append(HEX_ID.matcher(segment).matches() && DIGITS.matcher(segment).find()
+                    ? "{id}" : DIGITS.matcher(segment).replaceAll("{n}"));
+        }
+        if (pattern.length() == 0 || path.endsWith("/")) {
+            pattern.append('/');
+        }
+        String query = url.getQuery();
+        if (query != null) {
+            char separator = '?';
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                pattern.append(separator).append(equals >= 0 ? parameter.substring(0, equals) : parameter);
+                separator = '&';
+            }
+        }
+        return pattern.toString();
+    }
+
+    private class PatternStats {
+        private final AtomicInteger discovered = new AtomicInteger(0);
+        private int sampled = 0;
+        private int sampledWithNewContent = 0;
+        private volatile boolean trapped = false;
+
+        /**
+         * @return true if the pattern has just become a trap
+         */
+        private synchronized boolean sample(boolean newContent) {
+            sampled++;
+            sampledWithNewContent += newContent ? 1 : 0;
+            if (sampled >= 2 * minSamples) {
+                // older pages weigh less, so a branch that has run dry is noticed soon
+                sampled /= 2;
+                sampledWithNewContent /= 2;
+            }
+            if (trapped || sampled < minSamples || sampledWithNewContent >= sampled * minNewContentRate) {
+                return false;
+            }
+            trapped = true;
+            return true;
+        }
+    }
+}
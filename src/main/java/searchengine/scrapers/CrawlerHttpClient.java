@@ -0,0 +1,130 @@
+package searchengine.scrapers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One {@link HttpClient} for the whole application: connections to a host are reused
+ * (keep-alive), and HTTP/2 is used with servers that support it. The number of concurrent
+ * exchanges with one host is limited by maxConnectionsPerHost.
+ */
+public class CrawlerHttpClient {
+
+    /**
+     * Reads the response. The body is closed and the host slot is released after the method returns.
+     */
+    @FunctionalInterface
+    public interface ResponseHandler<T> {
+        T handle(HttpResponse<InputStream> response) throws IOException;
+    }
+
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final Duration bodyTimeout;
+    private final int maxConnectionsPerHost;
+    private final Map<String, Semaphore> hostConnections = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor bodyDeadlines;
+
+    /**
+     * @param requestTimeout how long to wait for the response headers
+     * @param bodyTimeout how long the whole exchange, body included, may take
+     */
+    public CrawlerHttpClient(HttpClient httpClient, Duration requestTimeout, Duration bodyTimeout,
+                             int maxConnectionsPerHost) {
+        this.httpClient = httpClient;
+        this.requestTimeout = requestTimeout;
+        this.bodyTimeout = bodyTimeout;
+        this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+        this.bodyDeadlines = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "http-body-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.bodyDeadlines.setRemoveOnCancelPolicy(true);
+    }
+
+    public HttpRequest.Builder newRequest(URI uri) {
+        return HttpRequest.newBuilder(uri).timeout(requestTimeout).GET();
+    }
+
+    public <T> T exchange(HttpRequest request, ResponseHandler<T> handler) throws IOException {
+        Semaphore connections = hostConnections.computeIfAbsent(hostOf(request.uri()),
+                host -> new Semaphore(maxConnectionsPerHost));
+        try {
+            connections.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + request.uri());
+        }
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            return handle(request, response, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + request.uri());
+        } finally {
+            connections.release();
+        }
+    }
+
+    /**
+     * The request timeout only covers the headers, so a server sending the body slowly would hold
+     * the host's place forever: after bodyTimeout the body is closed and the exchange fails.
+     */
+    private <T> T handle(HttpRequest request, HttpResponse<InputStream> response, ResponseHandler<T> handler)
+            throws IOException {
+        AtomicBoolean timedOut = new AtomicBoolean(false);
+        ScheduledFuture<?> deadline = bodyDeadlines.schedule(() -> {
+            timedOut.set(true);
+            closeQuietly(response.body());
+        }, bodyTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        try {
+            T result = handler.handle(response);
+            if (timedOut.get()) { // the handler may have seen the closed body as the end of a complete one
+                throw bodyTimeoutException(request);
+            }
+            return result;
+        } catch (IOException e) {
+            if (timedOut.get()) {
+                throw bodyTimeoutException(request);
+            }
+            throw e;
+        } finally {
+            deadline.cancel(false);
+            // a body closed before its end aborts the exchange, and an HTTP/1.1 connection is not reused
+            response.body().close();
+        }
+    }
+
+    private HttpTimeoutException bodyTimeoutException(HttpRequest request) {
+        return new HttpTimeoutException("Response body of " + request.uri() + " was not received in "
+                + bodyTimeout.toMillis() + " ms");
+    }
+
+    private static void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException ignored) {
+            // the exchange is abandoned anyway
+        }
+    }
+
+    private static String hostOf(URI uri) {
+        return uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,64 @@
+package searchengine.scrapers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sliding window of requests over the last windowSeconds: how many there were and how many of
+ * them ended with an error. The window is split into {@value #BUCKETS} buckets, a stale bucket
+ * is reset as a whole, so counting a request needs no memory.
+ */
+public class ErrorWindow {
+    private static final int BUCKETS = 10;
+
+    private final long bucketNanos;
+    private final int[] requests = new int[BUCKETS];
+    private final int[] errors = new int[BUCKETS];
+    private final long[] bucketStarts = new long[BUCKETS];
+
+    public ErrorWindow(long windowSeconds) {
+        this.bucketNanos = Math.max(1, TimeUnit.SECONDS.toNanos(Math.max(1, windowSeconds)) / BUCKETS);
+    }
+
+    public synchronized void record(boolean error, long nowNanos) {
+        long bucketStart = nowNanos - Math.floorMod(nowNanos, bucketNanos);
+        int bucket = (int) Math.floorMod(Math.floorDiv(nowNanos, bucketNanos), (long) BUCKETS);
+        if (bucketStarts[bucket] != bucketStart) {
+            bucketStarts[bucket] = bucketStart;
+            requests[bucket] = 0;
+            errors[bucket] = 0;
+        }
+        requests[bucket]++;
+        if (error) {
+            errors[bucket]++;
+        }
+    }
+
+    public synchronized int getRequests(long nowNanos) {
+        return sum(requests, nowNanos);
+    }
+
+    public synchronized int getErrors(long nowNanos) {
+        return sum(errors, nowNanos);
+    }
+
+    /**
+     * Resets the window, for example after the host has started answering again.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < BUCKETS; i++) {
+            requests[i] = 0;
+            errors[i] = 0;
+        }
+    }
+
+    private int sum(int[] counts, long nowNanos) {
+        long windowStart = nowNanos - bucketNanos * BUCKETS;
+        int sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (requests[i] > 0 && bucketStarts[i] > windowStart) {
+                sum += counts[i];
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,125 @@
+package searchengine.scrapers;
+
+import lombok.Getter;
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Result of one HTTP exchange: status code, headers and page body.
+ */
+@Getter
+public class FetchResult {
+    // a page declares its charset in <meta> near the start of <head>
+    private static final int CHARSET_SNIFF_BYTES = 1024;
+    private static final Pattern META_CHARSET = Pattern.compile("(?i)<meta[^>]+charset\\s*=\\s*[\"']?([\\w.:-]+)");
+    public enum Outcome {
+        OK,
+        NOT_MODIFIED,
+        HTTP_ERROR,
+        NOT_HTML,
+        TOO_LARGE
+    }
+
+    private final String url;
+    private final Outcome outcome;
+    private final int statusCode;
+    private final String contentType;
+    private final String charset;
+    private final Map<String, String> headers;
+    private final byte[] body;
+
+    FetchResult(String url, Outcome outcome, int statusCode, String contentType, String charset,
+                Map<String, String> headers, byte[] body) {
+        this.url = url;
+        this.outcome = outcome;
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.charset = charset;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    /**
+     * A "not modified" response without going to the server - when the sitemap says the page
+     * has not changed since the last indexing. The headers hold the saved validators.
+     */
+    static FetchResult notModifiedSinceStored(String url, String etag, String lastModified) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (etag != null) {
+            headers.put("ETag", etag);
+        }
+        if (lastModified != null) {
+            headers.put("Last-Modified", lastModified);
+        }
+        return new FetchResult(url, Outcome.NOT_MODIFIED, 304, null, null, headers, new byte[0]);
+    }
+
+    public boolean isOk() {
+        return outcome == Outcome.OK;
+    }
+
+    public boolean isNotModified() {
+        return outcome == Outcome.NOT_MODIFIED;
+    }
+
+    public String header(String name) {
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes the already downloaded page body, no request is repeated. The charset is taken
+     * from Content-Type, otherwise from the BOM or &lt;meta charset&gt;, UTF-8 by default.
+     */
+    public String html() throws IOException {
+        if (!isOk()) {
+            throw failureException();
+        }
+        if (body.length >= 3 && body[0] == (byte) 0xEF && body[1] == (byte) 0xBB && body[2] == (byte) 0xBF) {
+            return new String(body, 3, body.length - 3, StandardCharsets.UTF_8);
+        }
+        return new String(body, detectCharset());
+    }
+
+    private Charset detectCharset() {
+        String name = charset;
+        if (name == null) {
+            String head = new String(body, 0, Math.min(body.length, CHARSET_SNIFF_BYTES), StandardCharsets.ISO_8859_1);
+            Matcher matcher = META_CHARSET.matcher(head);
+            name = matcher.find() ? matcher.group(1) : null;
+        }
+        try {
+            return name != null && Charset.isSupported(name) ? Charset.forName(name) : StandardCharsets.UTF_8;
+        } catch (IllegalCharsetNameException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    public IOException failureException() {
+        switch (outcome) {
+            case HTTP_ERROR:
+                return new HttpStatusException("HTTP error fetching URL", statusCode, url);
+            case NOT_HTML:
+                return new UnsupportedMimeTypeException("Unhandled content type", contentType, url);
+            case NOT_MODIFIED:
+                return new IOException("Page '" + url + "' has not been modified, there is no body to parse");
+            case TOO_LARGE:
+                return new IOException("Body of '" + url + "' exceeds the maximum allowed size");
+            default:
+                return new IOException("Page '" + url + "' was fetched successfully");
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package searchengine.scrapers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker for hosts that do not answer or answer with server errors. If within a
+ * sliding window the share of timeouts, connection errors, 429 and 5xx exceeds the threshold,
+ * requests to the host are paused. When the pause is over, one probe request goes to the host:
+ * on success the host is crawled again, on error the pause doubles. Shared by all sites.
+ */
+public class HostCircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(HostCircuitBreaker.class);
+    // how often a request that waits for the probe checks the breaker again
+    private static final long PROBE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final long windowSeconds;
+    private final int minRequests;
+    private final double maxErrorRate;
+    private final long openNanos;
+    private final long maxOpenNanos;
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * @param minRequests  with fewer requests in the window there is too little to judge the host
+     * @param maxErrorRate the error share at which the host is paused
+     */
+    public HostCircuitBreaker(long windowSeconds, int minRequests, double maxErrorRate, long openSeconds,
+                              long maxOpenSeconds) {
+        this.windowSeconds = windowSeconds;
+        this.minRequests = Math.max(1, minRequests);
+        this.maxErrorRate = maxErrorRate;
+        this.openNanos = TimeUnit.SECONDS.toNanos(Math.max(1, openSeconds));
+        this.maxOpenNanos = Math.max(this.openNanos, TimeUnit.SECONDS.toNanos(maxOpenSeconds));
+    }
+
+    /**
+     * Asks for permission to send a request to the host. Once permitted, the result must be
+     * reported through {@link #onResponse(String, int)} or {@link #release(String)}.
+     *
+     * @return 0 if the request may be sent, otherwise how many nanoseconds to wait before trying again
+     */
+    public long tryAcquire(String host) {
+        return breaker(host).tryAcquire(host, System.nanoTime());
+    }
+
+    /**
+     * Counts a response of the host.
+     *
+     * @param statusCode response status code or -1 if there was no response (timeout, connection error)
+     */
+    public void onResponse(String host, int statusCode) {
+        breaker(host).onResponse(host, isHostError(statusCode), System.nanoTime());
+    }
+
+    /**
+     * The permission was granted but the request was never sent.
+     */
+    public void release(String host) {
+        breaker(host).release();
+    }
+
+    public State getState(String host) {
+        return breaker(host).getState();
+    }
+
+    /**
+     * @return how many probe requests in a row ended with an error; 0 while the host answers
+     */
+    public int getFailedProbes(String host) {
+        return breaker(host).getFailedProbes();
+    }
+
+    /**
+     * An error of the host rather than the page: the host is overloaded or unavailable.
+     */
+    public static boolean isHostError(int statusCode) {
+        return statusCode < 0 || statusCode == 429 || statusCode >= 500;
+    }
+
+    private Breaker breaker(String host) {
+        return breakers.computeIfAbsent(host.toLowerCase(Locale.ROOT), key -> new Breaker(new ErrorWindow(windowSeconds)));
+    }
+
+    private class Breaker {
+        private final ErrorWindow window;
+        private State state = State.CLOSED;
+        private long openUntilNanos = 0;
+        private long currentOpenNanos = openNanos;
+        private boolean probeInFlight = false;
+        private long probeStartNanos = 0;
+        private int failedProbes = 0;
+
+        private Breaker(ErrorWindow window) {
+            this.window = window;
+        }
+
+        private synchronized long tryAcquire(String host, long now) {
+            switch (state) {
+                case CLOSED:
+                    return 0;
+                case OPEN:
+                    if (now - openUntilNanos < 0) {
+                        return openUntilNanos - now;
+                    }
+                    state = State.HALF_OPEN;
+                    logger.info("Host '{}': sending a probe request", host);
+                    return startProbe(now);
+                default:
+                    // a probe that never reported back must not block the host forever
+                    return !probeInFlight || now - probeStartNanos > currentOpenNanos ? startProbe(now) : PROBE_WAIT_NANOS;
+            }
+        }
+
+        private long startProbe(long now) {
+            probeInFlight = true;
+            probeStartNanos = now;
+            return 0;
+        }
+
+        private synchronized void onResponse(String host, boolean error, long now) {
+            switch (state) {
+                case CLOSED:
+                    window.record(error, now);
+                    int requests = window.getRequests(now);
+                    int errors = window.getErrors(now);
+                    if (error && requests >= minRequests && errors >= requests * maxErrorRate) {
+                        open(now);
+                        logger.warn("Host '{}': {} of the last {} requests failed, pausing it for {} s", host, errors,
+                                requests, TimeUnit.NANOSECONDS.toSeconds(currentOpenNanos));
+                    }
+                    break;
+                case HALF_OPEN:
+                    probeInFlight = false;
+                    if (error) {
+                        failedProbes++;
+                        currentOpenNanos = Math.min(maxOpenNanos, currentOpenNanos * 2);
+                        open(now);
+                        logger.warn("Host '{}': probe request failed ({} in a row), pausing it for {} s", host,
+                                failedProbes, TimeUnit.NANOSECONDS.toSeconds(currentOpenNanos));
+                    } else {
+                        state = State.CLOSED;
+                        failedProbes = 0;
+                        currentOpenNanos = openNanos;
+                        window.clear();
+                        logger.info("Host '{}' responds again, crawling resumed", host);
+                    }
+                    break;
+                default:
+                    // responses to requests sent before the breaker opened say nothing new
+            }
+        }
+
+        private void open(long now) {
+            state = State.OPEN;
+            openUntilNanos = now + currentOpenNanos;
+        }
+
+        private synchronized void release() {
+            if (state == State.HALF_OPEN) {
+                probeInFlight = false;
+            }
+        }
+
+        private synchronized State getState() {
+            return state;
+        }
+
+        private synchronized int getFailedProbes() {
+            return failedProbes;
+        }
+    }
+}
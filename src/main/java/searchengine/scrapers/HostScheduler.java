@@ -0,0 +1,136 @@
+package searchengine.scrapers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polite crawling: every host has its own "token bucket". The interval between requests to a host
+ * adapts to its responses - it grows on 429/503 and connection errors and slowly shrinks while
+ * the host answers normally, but never goes below the Crawl-delay from robots.txt.
+ */
+public class HostScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(HostScheduler.class);
+    private static final double BACKOFF_FACTOR = 2.0;
+    private static final double ERROR_BACKOFF_FACTOR = 1.5;
+    private static final double RECOVERY_FACTOR = 0.95;
+
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+    private final int burst;
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+
+    public HostScheduler(long minDelayMillis, long maxDelayMillis, int burst) {
+        this.minDelayMillis = Math.max(0, minDelayMillis);
+        this.maxDelayMillis = Math.max(this.minDelayMillis, maxDelayMillis);
+        this.burst = Math.max(1, burst);
+    }
+
+    /**
+     * Waits until the next request may be sent to the host.
+     */
+    public void acquire(String host) throws InterruptedException {
+        long waitNanos = state(host).reserve(System.nanoTime());
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    public void setCrawlDelay(String host, long crawlDelayMillis) {
+        long floor = Math.min(maxDelayMillis, Math.max(minDelayMillis, crawlDelayMillis));
+        state(host).setFloor(TimeUnit.MILLISECONDS.toNanos(floor));
+        if (crawlDelayMillis > 0) {
+            logger.info("Host '{}': Crawl-delay {} ms", host, floor);
+        }
+    }
+
+    /**
+     * Counts a response of the host.
+     *
+     * @param retryAfter value of the Retry-After header or null
+     */
+    public void onResponse(String host, int statusCode, String retryAfter) {
+        HostState state = state(host);
+        if (statusCode == 429 || statusCode == 503) {
+            state.slowDown(BACKOFF_FACTOR, parseRetryAfterNanos(retryAfter), System.nanoTime());
+            logger.info("Host '{}' throttles us ({}), delay is now {} ms", host, statusCode, getDelayMillis(host));
+        } else if (statusCode >= 500) {
+            state.slowDown(ERROR_BACKOFF_FACTOR, 0, System.nanoTime());
+        } else {
+            state.speedUp();
+        }
+    }
+
+    public void onConnectionError(String host) {
+        state(host).slowDown(ERROR_BACKOFF_FACTOR, 0, System.nanoTime());
+    }
+
+    public long getDelayMillis(String host) {
+        return TimeUnit.NANOSECONDS.toMillis(state(host).getDelayNanos());
+    }
+
+    private HostState state(String host) {
+        return hosts.computeIfAbsent(host.toLowerCase(Locale.ROOT), key -> new HostState());
+    }
+
+    private static long parseRetryAfterNanos(String retryAfter) {
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toNanos(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            return 0; // an HTTP date is not worth parsing, the backoff covers it
+        }
+    }
+
+    private class HostState {
+        private long floorNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        private long delayNanos = floorNanos;
+        private double tokens = burst;
+        private long lastRefillNanos = System.nanoTime();
+        private long pausedUntilNanos = 0;
+
+        /**
+         * Takes a token and returns how long to wait before the request. Tokens may go below
+         * zero - that is how concurrent requests to the host line up.
+         */
+        private synchronized long reserve(long now) {
+            if (delayNanos == 0) {
+                return Math.max(0, pausedUntilNanos - now);
+            }
+            tokens = Math.min(burst, tokens + (double) (now - lastRefillNanos) / delayNanos);
+            lastRefillNanos = now;
+            tokens -= 1;
+            long tokenWait = tokens >= 0 ? 0 : (long) (-tokens * delayNanos);
+            return Math.max(tokenWait, pausedUntilNanos - now);
+        }
+
+        private synchronized void setFloor(long floorNanos) {
+            this.floorNanos = floorNanos;
+            this.delayNanos = Math.max(delayNanos, floorNanos);
+        }
+
+        private synchronized void slowDown(double factor, long pauseNanos, long now) {
+            long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+            long base = Math.max(delayNanos, TimeUnit.MILLISECONDS.toNanos(1));
+            delayNanos = Math.min(maxDelayNanos, (long) (base * factor));
+            tokens = Math.min(tokens, 0); // no bursts until the host recovers
+            if (pauseNanos > 0) {
+                pausedUntilNanos = Math.max(pausedUntilNanos, now + Math.min(pauseNanos, maxDelayNanos));
+            }
+        }
+
+        private synchronized void speedUp() {
+            delayNanos = Math.max(floorNanos, (long) (delayNanos * RECOVERY_FACTOR));
+        }
+
+        private synchronized long getDelayNanos() {
+            return delayNanos;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package searchengine.scrapers;
+
+import searchengine.util.SimHash;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SimHash fingerprints of the indexed pages of one site. A fingerprint is split into
+ * maxDistance + 1 bands: if fingerprints differ in at most maxDistance bits, at least one band
+ * matches, so only pages sharing a band have to be compared.
+ */
+public class NearDuplicateIndex {
+    private final int maxDistance;
+    private final int[] bandShifts;
+    private final long[] bandMasks;
+    private final List<Map<Long, List<Entry>>> bands = new ArrayList<>();
+
+    public NearDuplicateIndex(int maxDistance) {
+        this.maxDistance = Math.max(0, Math.min(maxDistance, 15));
+        int bandCount = this.maxDistance + 1;
+        this.bandShifts = new int[bandCount];
+        this.bandMasks = new long[bandCount];
+        int shift = 0;
+        for (int band = 0; band < bandCount; band++) {
+            int width = band < 64 % bandCount ? 64 / bandCount + 1 : 64 / bandCount; // the bands cover all 64 bits
+            bandShifts[band] = shift;
+            bandMasks[band] = width == 64 ? -1L : (1L << width) - 1;
+            shift += width;
+            bands.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Looks for an already added page that nearly matches this one, and if there is none, adds this one.
+     * The check and the add are atomic, so of two copies parsed at the same time exactly one
+     * becomes the original.
+     *
+     * @return path of the original page or null if the page was added as a new one
+     */
+    public synchronized String findOrAdd(long fingerprint, String path) {
+        for (int band = 0; band < bands.size(); band++) {
+            List<Entry> candidates = bands.get(band).get(bandOf(fingerprint, band));
+            if (candidates == null) {
+                continue;
+            }
+            for (Entry candidate : candidates) {
+                if (!candidate.path.equals(path) && SimHash.distance(candidate.fingerprint, fingerprint) <= maxDistance) {
+                    return candidate.path;
+                }
+            }
+        }
+        add(fingerprint, path);
+        return null;
+    }
+
+    public synchronized void add(long fingerprint, String path) {
+        Entry entry = new Entry(fingerprint, path);
+        for (int band = 0; band < bands.size(); band++) {
+            bands.get(band).computeIfAbsent(bandOf(fingerprint, band), key -> new ArrayList<>(1)).add(entry);
+        }
+    }
+
+    private long bandOf(long fingerprint, int band) {
+        return (fingerprint >>> bandShifts[band]) & bandMasks[band];
+    }
+
+    private static class Entry {
+        private final long fingerprint;
+        private final String path;
+
+        private Entry(long fingerprint, String path) {
+            this.fingerprint = fingerprint;
+            this.path = path;
+        }
+    }
+}
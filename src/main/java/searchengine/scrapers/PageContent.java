@@ -0,0 +1,27 @@
+package searchengine.scrapers;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Everything the crawler needs from an HTML page: the title, the text without service blocks,
+ * links without rel="nofollow", the URL from &lt;link rel="canonical"&gt; and meta robots directives.
+ * The URLs are absolute but not yet canonical.
+ */
+@Getter
+public class PageContent {
+    private final String title;
+    private final String text;
+    private final List<String> links;
+    private final String canonicalUrl;
+    private final String robotsDirectives;
+
+    public PageContent(String title, String text, List<String> links, String canonicalUrl, String robotsDirectives) {
+        this.title = title;
+        this.text = text;
+        this.links = links;
+        this.canonicalUrl = canonicalUrl;
+        this.robotsDirectives = robotsDirectives;
+    }
+}
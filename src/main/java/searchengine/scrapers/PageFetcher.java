@@ -0,0 +1,251 @@
+package searchengine.scrapers;
+
+import org.jsoup.HttpStatusException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Downloads a page with exactly one HTTP request through the shared {@link CrawlerHttpClient}.
+ * The content type and the declared size are checked by the headers before the body is read,
+ * so non-HTML responses and pages that are too large are neither downloaded nor parsed; jsoup
+ * only parses the received bytes. If a {@link HostScheduler} is set, every response is reported
+ * to it to tune the request rate to the host.
+ */
+public class PageFetcher {
+    private static final Logger logger = LoggerFactory.getLogger(PageFetcher.class);
+
+    // an honest bot name, so site owners can find us in their logs and address us in robots.txt
+    public static final String USER_AGENT = "searchengine/1.0 (+https://github.com/EduardoRoscoe/finalProjectSkillbox)";
+    public static final String REFERRER = "http://www.google.com";
+    private static final String ACCEPT = "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
+    private static final Pattern HTML_CONTENT_TYPE = Pattern.compile("^(text/html|application/xhtml\\+xml)\\b.*");
+    private static final Pattern CHARSET = Pattern.compile("(?i)\\bcharset=[\"']?([^;\"'\\s]+)");
+
+    /**
+     * Reads the response body, already decoded from gzip/deflate.
+     */
+    @FunctionalInterface
+    public interface BodyReader<T> {
+        T read(InputStream body) throws IOException;
+    }
+
+    private final CrawlerHttpClient httpClient;
+    private final int maxBodySize;
+    private final HostScheduler hostScheduler;
+
+    public PageFetcher(CrawlerHttpClient httpClient, int maxBodySize) {
+        this(httpClient, maxBodySize, null);
+    }
+
+    public PageFetcher(CrawlerHttpClient httpClient, int maxBodySize, HostScheduler hostScheduler) {
+        this.httpClient = httpClient;
+        this.maxBodySize = maxBodySize;
+        this.hostScheduler = hostScheduler;
+    }
+
+    public FetchResult fetch(String url) throws IOException {
+        return fetch(url, null, null);
+    }
+
+    /**
+     * Conditional request: if the page has not changed since the last indexing, the server answers
+     * 304 without a body, and the result is {@link FetchResult.Outcome#NOT_MODIFIED}.
+     *
+     * @param etag         ETag of the previous response or null
+     * @param lastModified Last-Modified of the previous response or null
+     */
+    public FetchResult fetch(String url, String etag, String lastModified) throws IOException {
+        return execute(url, etag, lastModified, response -> {
+            int statusCode = response.statusCode();
+            String contentType = response.headers().firstValue("Content-Type").orElse(null);
+            Map<String, String> headers = headersOf(response);
+            if (statusCode == 304) {
+                return new FetchResult(url, FetchResult.Outcome.NOT_MODIFIED, statusCode, contentType, null, headers, new byte[0]);
+            }
+            if (statusCode >= 400) {
+                return new FetchResult(url, FetchResult.Outcome.HTTP_ERROR, statusCode, contentType, null, headers, new byte[0]);
+            }
+            if (!isHtml(contentType)) {
+                logger.debug("Skipped '{}' with content type '{}'", url, contentType);
+                return new FetchResult(url, FetchResult.Outcome.NOT_HTML, statusCode, contentType, null, headers, new byte[0]);
+            }
+            if (response.headers().firstValueAsLong("Content-Length").orElse(-1) > maxBodySize) {
+                return tooLarge(url, statusCode, contentType, headers);
+            }
+            byte[] body = readBody(response);
+            if (body == null) {
+                return tooLarge(url, statusCode, contentType, headers);
+            }
+            return new FetchResult(url, FetchResult.Outcome.OK, statusCode, contentType, charsetOf(contentType), headers, body);
+        });
+    }
+
+    /**
+     * Downloads a text file (robots.txt, for example) without checking the content type.
+     */
+    public FetchResult fetchText(String url) throws IOException {
+        return execute(url, null, null, response -> {
+            int statusCode = response.statusCode();
+            String contentType = response.headers().firstValue("Content-Type").orElse(null);
+            Map<String, String> headers = headersOf(response);
+            if (statusCode >= 400) {
+                return new FetchResult(url, FetchResult.Outcome.HTTP_ERROR, statusCode, contentType, null, headers, new byte[0]);
+            }
+            byte[] body = readBody(response);
+            if (body == null) {
+                return tooLarge(url, statusCode, contentType, headers);
+            }
+            return new FetchResult(url, FetchResult.Outcome.OK, statusCode, contentType, charsetOf(contentType), headers, body);
+        });
+    }
+
+    /**
+     * Passes the response body to the reader as a stream without a size limit - for large files
+     * like sitemap.xml that are read in parts. Gzip-compressed files are decompressed.
+     */
+    public <T> T read(String url, BodyReader<T> reader) throws IOException {
+        return execute(url, null, null, response -> {
+            if (response.statusCode() >= 400) {
+                throw new HttpStatusException("HTTP error fetching URL", response.statusCode(), url);
+            }
+            BufferedInputStream body = new BufferedInputStream(decodedBody(response));
+            body.mark(2);
+            boolean gzipped = body.read() == 0x1f && body.read() == 0x8b; // a .xml.gz file, not a gzip encoding
+            body.reset();
+            return reader.read(gzipped ? new GZIPInputStream(body) : body);
+        });
+    }
+
+    private <T> T execute(String url, String etag, String lastModified, CrawlerHttpClient.ResponseHandler<T> handler)
+            throws IOException {
+        HttpRequest.Builder request = httpClient.newRequest(toUri(url))
+                .header("User-Agent", USER_AGENT)
+                .header("Referer", REFERRER)
+                .header("Accept", ACCEPT)
+                .header("Accept-Encoding", "gzip, deflate");
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            request.header("If-Modified-Since", lastModified);
+        }
+        boolean[] responded = {false};
+        try {
+            return httpClient.exchange(request.build(), response -> {
+                responded[0] = true;
+                if (hostScheduler != null) {
+                    hostScheduler.onResponse(hostOf(url), response.statusCode(),
+                            response.headers().firstValue("Retry-After").orElse(null));
+                }
+                return handler.handle(response);
+            });
+        } catch (IOException e) {
+            if (hostScheduler != null && !responded[0]) {
+                hostScheduler.onConnectionError(hostOf(url));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the body or null if it is larger than maxBodySize
+     */
+    private byte[] readBody(HttpResponse<InputStream> response) throws IOException {
+        try (InputStream in = decodedBody(response)) {
+            // one extra byte tells a truncated body from one that fits exactly
+            byte[] body = in.readNBytes(maxBodySize + 1);
+            return body.length > maxBodySize ? null : body;
+        }
+    }
+
+    private static InputStream decodedBody(HttpResponse<InputStream> response) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(response.body());
+            case "deflate":
+                return new InflaterInputStream(response.body());
+            default:
+                return response.body();
+        }
+    }
+
+    private static Map<String, String> headersOf(HttpResponse<?> response) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+            headers.put(header.getKey(), String.join(", ", header.getValue()));
+        }
+        return headers;
+    }
+
+    /**
+     * Links on pages may contain spaces and non-ASCII characters that {@link URI} does not accept as is.
+     */
+    private static URI toUri(String url) throws MalformedURLException {
+        try {
+            return URI.create(url);
+        } catch (IllegalArgumentException e) {
+            URL parsed = new URL(url);
+            try {
+                return new URI(parsed.getProtocol(), parsed.getUserInfo(), parsed.getHost(), parsed.getPort(),
+                        parsed.getPath(), parsed.getQuery(), null);
+            } catch (URISyntaxException syntaxException) {
+                throw new MalformedURLException("Malformed url '" + url + "': " + syntaxException.getMessage());
+            }
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+
+    static String charsetOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        Matcher matcher = CHARSET.matcher(contentType);
+        if (!matcher.find()) {
+            return null;
+        }
+        try {
+            return Charset.isSupported(matcher.group(1)) ? matcher.group(1) : null; // null lets jsoup detect it
+        } catch (IllegalCharsetNameException e) {
+            return null;
+        }
+    }
+
+    private FetchResult tooLarge(String url, int statusCode, String contentType, Map<String, String> headers) {
+        logger.warn("Skipped '{}': body is larger than {} bytes", url, maxBodySize);
+        return new FetchResult(url, FetchResult.Outcome.TOO_LARGE, statusCode, contentType, null, headers, new byte[0]);
+    }
+
+    private static boolean isHtml(String contentType) {
+        // a missing content type is treated as html, as browsers do
+        return contentType == null || HTML_CONTENT_TYPE.matcher(contentType.toLowerCase(Locale.ROOT)).matches();
+    }
+}
@@ -0,0 +1,122 @@
+package searchengine.scrapers;
+
+import org.jsoup.internal.StringUtil;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Parses an HTML page in one pass with the jsoup streaming parser: links, title, canonical,
+ * meta robots and text are collected as elements are closed. A parsed element is at once
+ * collapsed into its text or removed together with its subtree, so the full DOM tree of the
+ * page is never built in memory.
+ * The words of the text are the same as in {@link searchengine.util.HtmlTextUtilities#cleanHtml(String)}.
+ */
+public class PageStreamReader {
+    // the same blocks HtmlTextUtilities.cleanHtml drops from the text
+    private static final Set<String> SKIPPED_TAGS = Set.of(
+            "script", "style", "nav", "header", "footer", "aside", "noscript", "iframe", "a", "button");
+
+    private PageStreamReader() {
+    }
+
+    /**
+     * @param withText false - no text is needed (the page has not changed, for example), only links are collected
+     */
+    public static PageContent read(String html, String baseUri, boolean withText) throws IOException {
+        String title = "";
+        List<String> links = new ArrayList<>();
+        String canonicalUrl = null;
+        StringBuilder robotsDirectives = new StringBuilder();
+        StringBuilder text = new StringBuilder();
+        try (StreamParser parser = new StreamParser(Parser.htmlParser()).parse(html, baseUri)) {
+            Iterator<Element> elements = parser.iterator();
+            while (elements.hasNext()) {
+                Element element = elements.next();
+                if (element.parentNode() == null) {
+                    continue; // already folded into its text
+                }
+                switch (element.normalName()) {
+                    case "a":
+                        if (element.hasAttr("href")
+                                && !element.attr("rel").toLowerCase(Locale.ROOT).contains("nofollow")) {
+                            links.add(element.absUrl("href"));
+                        }
+                        break;
+                    case "title":
+                        title = element.text();
+                        break;
+                    case "meta":
+                        if (element.attr("name").equalsIgnoreCase("robots")) {
+                            robotsDirectives.append(element.attr("content")).append(',');
+                        }
+                        break;
+                    case "link":
+                        if (canonicalUrl == null && element.attr("rel").equalsIgnoreCase("canonical")
+                                && element.hasAttr("href")) {
+                            canonicalUrl = element.absUrl("href");
+                        }
+                        break;
+                    default:
+                }
+                if (withText && !isSkipped(element)) {
+                    fold(element);
+                } else {
+                    element.remove();
+                }
+            }
+            if (withText) {
+                appendText(parser.document(), text);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new PageContent(title, StringUtil.normaliseWhitespace(text.toString()).trim(), links, canonicalUrl,
+                robotsDirectives.toString());
+    }
+
+    private static boolean isSkipped(Element element) {
+        return SKIPPED_TAGS.contains(element.normalName())
+                || element.normalName().equals("label") && element.attr("for").equals("captcha_accept");
+    }
+
+    /**
+     * Replaces a parsed element with one text node holding its text.
+     */
+    private static void fold(Element element) {
+        StringBuilder text = new StringBuilder();
+        boolean spaced = element.tag().isBlock() || element.normalName().equals("br");
+        if (spaced) {
+            text.append(' ');
+        }
+        appendText(element, text);
+        if (spaced) {
+            text.append(' ');
+        }
+        element.replaceWith(new TextNode(text.toString()));
+    }
+
+    private static void appendText(Node node, StringBuilder text) {
+        for (Node child : node.childNodes()) {
+            if (child instanceof TextNode) {
+                text.append(((TextNode) child).getWholeText());
+            } else if (child instanceof Element && !isSkipped((Element) child)) {
+                // an element the parser did not hand out on its own
+                boolean spaced = ((Element) child).tag().isBlock();
+                text.append(spaced ? " " : "");
+                appendText(child, text);
+                text.append(spaced ? " " : "");
+            }
+        }
+    }
+}
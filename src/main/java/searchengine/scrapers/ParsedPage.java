@@ -0,0 +1,38 @@
+package searchengine.scrapers;
+
+import lombok.Getter;
+import searchengine.model.Page;
+
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A page after the parse stage: the entity ready to be written, its lemmas and the found links.
+ * A page that forbids indexing (noindex) is not written to the database by the crawler.
+ * A page unchanged since the last indexing (contentChanged = false) has no lemmas, and the
+ * entity holds only the id, path and validators. A copy of another page (duplicate) - by
+ * canonical or a near-exact one - brings no new content. By textFingerprint, the fingerprint
+ * of the new version of the page text, {@link CrawlTrapDetector} finds pages with the same text.
+ */
+@Getter
+public class ParsedPage {
+    private final Page page;
+    private final Map<String, Integer> lemmas;
+    private final List<URL> subPageUrls;
+    private final boolean indexable;
+    private final boolean contentChanged;
+    private final boolean duplicate;
+    private final Long textFingerprint;
+
+    public ParsedPage(Page page, Map<String, Integer> lemmas, List<URL> subPageUrls, boolean indexable,
+                      boolean contentChanged, boolean duplicate, Long textFingerprint) {
+        this.page = page;
+        this.lemmas = lemmas;
+        this.subPageUrls = subPageUrls;
+        this.indexable = indexable;
+        this.contentChanged = contentChanged;
+        this.duplicate = duplicate;
+        this.textFingerprint = textFingerprint;
+    }
+}
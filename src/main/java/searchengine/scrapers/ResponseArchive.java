@@ -0,0 +1,330 @@
+package searchengine.scrapers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archive of the downloaded pages of a site on the local disk, to reindex the site without
+ * crawling it again after a parsing or lemmatization change. The archive is append-only:
+ * responses are written to segments in WARC format ("segment-00001.warc.gz", each record is a
+ * separate gzip member), and a new segment starts when segmentBytes is reached. An "index.txt"
+ * index is kept alongside: a "segment offset length status URL" line per record. A record gets
+ * into the index only after it is fully written to the segment, so a record cut off by a crash
+ * is never read. {@link #replay(Predicate)} returns the last record of every URL.
+ */
+public class ResponseArchive implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseArchive.class);
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.warc\\.gz");
+    private static final String INDEX_FILE = "index.txt";
+    private static final byte[] BLANK_LINE = {'\r', '\n', '\r', '\n'};
+
+    private final Path directory;
+    private final long segmentBytes;
+    private int segment;
+    private FileChannel segmentChannel;
+    private BufferedWriter indexWriter;
+
+    private ResponseArchive(Path directory, long segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Opens the site archive, new records are appended to the last segment.
+     *
+     * @param segmentBytes 0 - one segment without a size limit
+     */
+    public static ResponseArchive open(Path archiveDir, String siteUrl, long segmentBytes) throws IOException {
+        ResponseArchive archive = new ResponseArchive(directoryOf(archiveDir, siteUrl), segmentBytes);
+        Files.createDirectories(archive.directory);
+        archive.segment = Math.max(1, archive.lastSegment());
+        return archive;
+    }
+
+    public static boolean exists(Path archiveDir, String siteUrl) {
+        return Files.exists(directoryOf(archiveDir, siteUrl).resolve(INDEX_FILE));
+    }
+
+    /**
+     * Appends a successful response to the archive; other responses are not archived.
+     */
+    public synchronized void append(FetchResult response) throws IOException {
+        if (!response.isOk()) {
+            return;
+        }
+        byte[] record = compress(response);
+        if (segmentChannel == null) {
+            openSegment();
+        } else if (segmentBytes > 0 && segmentChannel.size() > 0 && segmentChannel.size() + record.length > segmentBytes) {
+            segmentChannel.close();
+            segment++;
+            openSegment();
+        }
+        long offset = segmentChannel.size();
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            segmentChannel.write(buffer);
+        }
+        indexWriter.write(segment + " " + offset + " " + record.length + " " + response.getStatusCode() + " "
+                + response.getUrl());
+        indexWriter.newLine();
+        indexWriter.flush();
+    }
+
+    /**
+     * Passes the last saved response of every URL to consumer while it returns true.
+     * Segments are read sequentially; damaged records are skipped.
+     *
+     * @return how many responses were passed
+     */
+    public int replay(Predicate<FetchResult> consumer) throws IOException {
+        List<IndexEntry> entries = new ArrayList<>(readIndex().values());
+        entries.sort(Comparator.comparingInt((IndexEntry entry) -> entry.segment)
+                .thenComparingLong(entry -> entry.offset));
+        int replayed = 0;
+        FileChannel channel = null;
+        int openSegment = 0;
+        try {
+            for (IndexEntry entry : entries) {
+                if (entry.segment != openSegment) {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                    channel = FileChannel.open(segmentFile(entry.segment), StandardOpenOption.READ);
+                    openSegment = entry.segment;
+                }
+                FetchResult response;
+                try {
+                    response = readRecord(channel, entry);
+                } catch (IOException e) {
+                    logger.warn("Skipped damaged archive record of '{}' in segment {}: {}", entry.url, entry.segment,
+                            e.getMessage());
+                    continue;
+                }
+                replayed++;
+                if (!consumer.test(response)) {
+                    break;
+                }
+            }
+        } finally {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+        return replayed;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (indexWriter != null) {
+            indexWriter.close();
+            indexWriter = null;
+        }
+        if (segmentChannel != null) {
+            segmentChannel.close();
+            segmentChannel = null;
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segmentChannel = FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (indexWriter == null) {
+            indexWriter = Files.newBufferedWriter(directory.resolve(INDEX_FILE), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    private int lastSegment() throws IOException {
+        int last = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    last = Math.max(last, Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        return last;
+    }
+
+    private Path segmentFile(int number) {
+        return directory.resolve(String.format("segment-%05d.warc.gz", number));
+    }
+
+    /**
+     * @return the last record of every URL with status 200
+     */
+    private Map<String, IndexEntry> readIndex() throws IOException {
+        Map<String, IndexEntry> entries = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(directory.resolve(INDEX_FILE), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ", 5);
+                if (fields.length < 5) {
+                    continue; // a line cut short by a crash
+                }
+                try {
+                    IndexEntry entry = new IndexEntry(Integer.parseInt(fields[0]), Long.parseLong(fields[1]),
+                            Integer.parseInt(fields[2]), fields[4]);
+                    if (Integer.parseInt(fields[3]) == 200) {
+                        entries.put(entry.url, entry);
+                    } else {
+                        entries.remove(entry.url);
+                    }
+                } catch (NumberFormatException e) {
+                    logger.debug("Skipped malformed archive index line '{}'", line);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static byte[] compress(FetchResult response) throws IOException {
+        StringBuilder http = new StringBuilder("HTTP/1.1 ").append(response.getStatusCode()).append(" OK\r\n");
+        boolean hasContentType = false;
+        for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+            if (header.getKey().startsWith(":")) {
+                continue; // HTTP/2 pseudo-headers
+            }
+            hasContentType |= header.getKey().equalsIgnoreCase("Content-Type");
+            http.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (!hasContentType && response.getContentType() != null) {
+            http.append("Content-Type: ").append(response.getContentType()).append("\r\n");
+        }
+        byte[] httpHead = http.append("\r\n").toString().getBytes(StandardCharsets.UTF_8);
+        byte[] body = response.getBody();
+        String warcHead = "WARC/1.0\r\n"
+                + "WARC-Type: response\r\n"
+                + "WARC-Target-URI: " + response.getUrl() + "\r\n"
+                + "WARC-Date: " + Instant.now().truncatedTo(ChronoUnit.SECONDS) + "\r\n"
+                + "WARC-Record-ID: <urn:uuid:" + UUID.randomUUID() + ">\r\n"
+                + "Content-Type: application/http; msgtype=response\r\n"
+                + "Content-Length: " + (httpHead.length + body.length) + "\r\n\r\n";
+        ByteArrayOutputStream record = new ByteArrayOutputStream(body.length / 3 + 512);
+        try (OutputStream out = new GZIPOutputStream(record)) {
+            out.write(warcHead.getBytes(StandardCharsets.UTF_8));
+            out.write(httpHead);
+            out.write(body);
+            out.write(BLANK_LINE);
+        }
+        return record.toByteArray();
+    }
+
+    private static FetchResult readRecord(FileChannel channel, IndexEntry entry) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(entry.length);
+        while (compressed.hasRemaining()) {
+            if (channel.read(compressed, entry.offset + compressed.position()) < 0) {
+                throw new IOException("segment ends inside the record");
+            }
+        }
+        byte[] record;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.array()))) {
+            record = in.readAllBytes();
+        }
+        int warcHeadEnd = indexOf(record, BLANK_LINE, 0);
+        if (warcHeadEnd < 0) {
+            throw new IOException("no WARC header");
+        }
+        Map<String, String> warcHeaders = parseHeaders(record, 0, warcHeadEnd);
+        int contentStart = warcHeadEnd + BLANK_LINE.length;
+        int contentEnd = contentStart + Integer.parseInt(warcHeaders.getOrDefault("content-length", "-1"));
+        int httpHeadEnd = indexOf(record, BLANK_LINE, contentStart);
+        if (contentEnd < contentStart || contentEnd > record.length || httpHeadEnd < 0 || httpHeadEnd > contentEnd) {
+            throw new IOException("record is incomplete");
+        }
+        String statusLine = new String(record, contentStart, lineEnd(record, contentStart) - contentStart,
+                StandardCharsets.UTF_8);
+        String[] status = statusLine.split(" ");
+        Map<String, String> headers = parseHeaders(record, contentStart, httpHeadEnd);
+        String contentType = headers.get("content-type");
+        byte[] body = Arrays.copyOfRange(record, httpHeadEnd + BLANK_LINE.length, contentEnd);
+        return new FetchResult(entry.url, FetchResult.Outcome.OK, Integer.parseInt(status[1]), contentType,
+                PageFetcher.charsetOf(contentType), headers, body);
+    }
+
+    /**
+     * @return headers with lower case names; the status line is skipped
+     */
+    private static Map<String, String> parseHeaders(byte[] record, int from, int to) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String line : new String(record, from, to - from, StandardCharsets.UTF_8).split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                        line.substring(colon + 1).trim());
+            }
+        }
+        return headers;
+    }
+
+    private static int lineEnd(byte[] data, int from) {
+        int end = indexOf(data, new byte[]{'\r', '\n'}, from);
+        return end < 0 ? data.length : end;
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static Path directoryOf(Path archiveDir, String siteUrl) {
+        String readablePart = siteUrl.replaceFirst("^https?://", "").replaceAll("[^A-Za-z0-9.-]", "_");
+        return archiveDir.resolve(readablePart + "-" + Long.toHexString(UrlFingerprint.of(siteUrl)));
+    }
+
+    private static class IndexEntry {
+        private final int segment;
+        private final long offset;
+        private final int length;
+        private final String url;
+
+        private IndexEntry(int segment, long offset, int length, String url) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.url = url;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package searchengine.scrapers;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Which download errors are transient and when to retry a request. Transient errors are timeouts,
+ * connection errors, 408, 425, 429 and 5xx except 501 and 505; other 4xx and 5xx are permanent.
+ * The pause before a retry doubles with every attempt and is picked at random between half and
+ * the full value, so retries of different pages do not hit the host at once.
+ */
+public class RetryPolicy {
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    public RetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseDelayMillis = Math.max(1, baseDelayMillis);
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+    }
+
+    /**
+     * @param statusCode response status code or -1 if there was no response
+     */
+    public static boolean isTransient(int statusCode) {
+        if (statusCode < 0) {
+            return true;
+        }
+        return statusCode == 408 || statusCode == 425 || statusCode == 429
+                || statusCode >= 500 && statusCode != 501 && statusCode != 505;
+    }
+
+    public boolean hasRetriesLeft(CrawlRequest request) {
+        return request.getAttempt() < maxRetries;
+    }
+
+    /**
+     * @param attempt retry number, starting with 1
+     */
+    public long delayMillis(int attempt) {
+        long delay = baseDelayMillis << Math.min(attempt - 1, 30);
+        delay = delay <= 0 ? maxDelayMillis : Math.min(delay, maxDelayMillis);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+}
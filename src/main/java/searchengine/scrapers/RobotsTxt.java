@@ -0,0 +1,187 @@
+package searchengine.scrapers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+
+/**
+ * robots.txt rules for our robot: Allow/Disallow with * and $ patterns, Crawl-delay and
+ * Sitemap links. Of several matching rules the longest wins, on equal length - Allow.
+ * The group with our robot name is used, and if there is none - the "*" group.
+ * If robots.txt is unavailable, the site must not be crawled: {@link #unreachable()} disallows all paths.
+ */
+public class RobotsTxt {
+    private static final RobotsTxt ALLOW_ALL = new RobotsTxt(Collections.emptyList(), 0, Collections.emptyList(), false);
+    private static final RobotsTxt UNREACHABLE = new RobotsTxt(List.of(new Rule("/", false)), 0,
+            Collections.emptyList(), true);
+
+    private final List<Rule> rules;
+    private final long crawlDelayMillis;
+    private final List<String> sitemaps;
+    private final boolean unreachable;
+
+    private RobotsTxt(List<Rule> rules, long crawlDelayMillis, List<String> sitemaps, boolean unreachable) {
+        this.rules = rules;
+        this.crawlDelayMillis = crawlDelayMillis;
+        this.sitemaps = sitemaps;
+        this.unreachable = unreachable;
+    }
+
+    public static RobotsTxt allowAll() {
+        return ALLOW_ALL;
+    }
+
+    /**
+     * Rules for a host whose robots.txt could not be fetched (5xx, 429, network error): everything is disallowed.
+     */
+    public static RobotsTxt unreachable() {
+        return UNREACHABLE;
+    }
+
+    public static RobotsTxt parse(String content, String agentToken) {
+        String agent = productToken(agentToken);
+        Group ownGroup = null;
+        Group wildcardGroup = null;
+        List<String> sitemaps = new ArrayList<>();
+
+        List<Group> currentGroups = new ArrayList<>();
+        boolean readingAgents = false;
+        for (String rawLine : content.split("\\r?\\n|\\r")) {
+            int commentStart = rawLine.indexOf('#');
+            String line = (commentStart >= 0 ? rawLine.substring(0, commentStart) : rawLine).trim();
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+
+            switch (field) {
+                case "user-agent":
+                    if (!readingAgents) {
+                        currentGroups = new ArrayList<>(); // a new group starts after the rules of the previous one
+                        readingAgents = true;
+                    }
+                    String groupAgent = productToken(value);
+                    if (groupAgent.equals("*")) {
+                        wildcardGroup = wildcardGroup == null ? new Group() : wildcardGroup;
+                        currentGroups.add(wildcardGroup);
+                    } else if (groupAgent.equals(agent)) {
+                        ownGroup = ownGroup == null ? new Group() : ownGroup;
+                        currentGroups.add(ownGroup);
+                    }
+                    break;
+                case "allow":
+                case "disallow":
+                    readingAgents = false;
+                    if (!value.isEmpty()) { // an empty Disallow allows everything
+                        for (Group group : currentGroups) {
+                            group.rules.add(new Rule(value, field.equals("allow")));
+                        }
+                    }
+                    break;
+                case "crawl-delay":
+                    readingAgents = false;
+                    for (Group group : currentGroups) {
+                        group.crawlDelayMillis = parseCrawlDelay(value);
+                    }
+                    break;
+                case "sitemap":
+                    sitemaps.add(value);
+                    break;
+                default:
+                    readingAgents = false;
+            }
+        }
+
+        Group group = ownGroup != null ? ownGroup : wildcardGroup;
+        if (group == null) {
+            return new RobotsTxt(Collections.emptyList(), 0, sitemaps, false);
+        }
+        return new RobotsTxt(group.rules, group.crawlDelayMillis, sitemaps, false);
+    }
+
+    /**
+     * @param pathAndQuery page path together with the query string, for example "/catalog?page=2"
+     */
+    public boolean isAllowed(String pathAndQuery) {
+        String path = pathAndQuery.isEmpty() ? "/" : pathAndQuery;
+        Rule bestMatch = null;
+        for (Rule rule : rules) {
+            if (rule.matches(path) && (bestMatch == null || rule.isStrongerThan(bestMatch))) {
+                bestMatch = rule;
+            }
+        }
+        return bestMatch == null || bestMatch.allow;
+    }
+
+    public long getCrawlDelayMillis() {
+        return crawlDelayMillis;
+    }
+
+    public List<String> getSitemaps() {
+        return sitemaps;
+    }
+
+    public boolean isUnreachable() {
+        return unreachable;
+    }
+
+    /**
+     * @param userAgent User-agent value, for example "SearchEngine/1.0"
+     * @return lower case robot name without the version, "searchengine"
+     */
+    private static String productToken(String userAgent) {
+        int end = 0;
+        while (end < userAgent.length() && userAgent.charAt(end) != '/' && !Character.isWhitespace(userAgent.charAt(end))) {
+            end++;
+        }
+        return userAgent.substring(0, end).toLowerCase(Locale.ROOT);
+    }
+
+    private static long parseCrawlDelay(String value) {
+        try {
+            return Math.max(0, (long) (Double.parseDouble(value) * 1000));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static class Group {
+        private final List<Rule> rules = new ArrayList<>();
+        private long crawlDelayMillis = 0;
+    }
+
+    private static class Rule {
+        private final String value;
+        private final boolean allow;
+        private final Pattern pattern;
+
+        private Rule(String value, boolean allow) {
+            this.value = value;
+            this.allow = allow;
+            this.pattern = value.contains("*") || value.endsWith("$") ? compile(value) : null;
+        }
+
+        private boolean matches(String path) {
+            return pattern == null ? path.startsWith(value) : pattern.matcher(path).lookingAt();
+        }
+
+        private boolean isStrongerThan(Rule other) {
+            return value.length() > other.value.length() || (value.length() == other.value.length() && allow && !other.allow);
+        }
+
+        private static Pattern compile(String value) {
+            boolean anchored = value.endsWith("$");
+            String body = anchored ? value.substring(0, value.length() - 1) : value;
+            StringJoiner regex = new StringJoiner(".*", "", anchored ? "$" : "");
+            for (String part : body.split("\\*", -1)) {
+                regex.add(Pattern.quote(part));
+            }
+            return Pattern.compile(regex.toString());
+        }
+    }
+}
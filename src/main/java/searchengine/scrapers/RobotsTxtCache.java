@@ -0,0 +1,82 @@
+package searchengine.scrapers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Downloads and parses robots.txt once per host. If there is no file (a 4xx response), the host
+ * has no restrictions. If the server did not return the file (5xx, 429) or did not answer, the
+ * host is closed entirely by RFC 9309 until robots.txt is fetched: such a result is kept for
+ * {@value #UNREACHABLE_TTL_MILLIS} ms, after which the file is requested again.
+ */
+public class RobotsTxtCache {
+    private static final Logger logger = LoggerFactory.getLogger(RobotsTxtCache.class);
+    // the product token of our User-Agent, the name robots.txt groups are matched against
+    public static final String AGENT_TOKEN = PageFetcher.USER_AGENT.substring(0, PageFetcher.USER_AGENT.indexOf('/'));
+
+    public static final long UNREACHABLE_TTL_MILLIS = 60_000;
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final PageFetcher pageFetcher;
+    private final Map<String, Entry> robotsByHost = new ConcurrentHashMap<>();
+
+    public RobotsTxtCache(PageFetcher pageFetcher) {
+        this.pageFetcher = pageFetcher;
+    }
+
+    public RobotsTxt get(URL url) {
+        String origin = url.getProtocol() + "://" + url.getAuthority().toLowerCase(Locale.ROOT);
+        return robotsByHost.compute(origin, (key, entry) ->
+                entry != null && !entry.isExpired() ? entry : load(key)).robotsTxt;
+    }
+
+    private Entry load(String origin) {
+        String robotsUrl = origin + "/robots.txt";
+        try {
+            FetchResult result = pageFetcher.fetchText(robotsUrl);
+            int statusCode = result.getStatusCode();
+            if (statusCode >= 500 || statusCode == TOO_MANY_REQUESTS) {
+                logger.warn("robots.txt at '{}' is unavailable ({}), the host is not crawled", robotsUrl, statusCode);
+                return Entry.unreachable();
+            }
+            if (!result.isOk()) {
+                logger.info("No robots.txt at '{}' ({}), crawling without restrictions", robotsUrl, statusCode);
+                return new Entry(RobotsTxt.allowAll(), Long.MAX_VALUE);
+            }
+            Charset charset = result.getCharset() != null && Charset.isSupported(result.getCharset())
+                    ? Charset.forName(result.getCharset()) : StandardCharsets.UTF_8;
+            RobotsTxt robotsTxt = RobotsTxt.parse(new String(result.getBody(), charset), AGENT_TOKEN);
+            logger.info("Loaded robots.txt of '{}'", origin);
+            return new Entry(robotsTxt, Long.MAX_VALUE);
+        } catch (IOException e) {
+            logger.warn("Failed to load '{}', the host is not crawled", robotsUrl, e);
+            return Entry.unreachable();
+        }
+    }
+
+    private static class Entry {
+        private final RobotsTxt robotsTxt;
+        private final long expiresAtMillis;
+
+        private Entry(RobotsTxt robotsTxt, long expiresAtMillis) {
+            this.robotsTxt = robotsTxt;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        private static Entry unreachable() {
+            return new Entry(RobotsTxt.unreachable(), System.currentTimeMillis() + UNREACHABLE_TTL_MILLIS);
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAtMillis;
+        }
+    }
+}
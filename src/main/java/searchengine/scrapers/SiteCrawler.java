@@ -0,0 +1,868 @@
+package searchengine.scrapers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import searchengine.config.CrawlerSettings;
+import searchengine.dto.entities.PageValidatorsDTO;
+import searchengine.exceptions.SiteIndexationErrorException;
+import searchengine.exceptions.TooManyPageErrorsException;
+import searchengine.exceptions.UnableToConnectToSiteException;
+import searchengine.model.Page;
+import searchengine.model.SiteEntity;
+import searchengine.services.LemmaFinder;
+import searchengine.services.indexers.IndexingPipeline;
+import searchengine.services.indexers.PageWriteRequest;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Crawls one site through the shared {@link IndexingPipeline}. URLs still to be visited wait
+ * in the bounded {@link CrawlFrontier}; as many pages of the site are downloaded at a time as
+ * {@link ConcurrencyController} allows, and no more than globalConcurrency pages of all sites,
+ * so memory use does not depend on the size of the site. Requests to a host go no more often
+ * than {@link HostScheduler} allows, and URLs disallowed by robots.txt never get into the queue.
+ * While {@link HostCircuitBreaker} considers the host unavailable, the crawl is paused; if the
+ * host did not answer several probes in a row or a large share of requests fails within
+ * siteErrorWindowSeconds, the site indexing fails. After a transient error the request goes
+ * back to the queue after a pause from {@link RetryPolicy}, after a permanent one the status
+ * code of the page is written to the database.
+ * On reindexing ({@link #setKnownPages(List)}) unchanged pages are not rewritten, and pages
+ * that are no longer on the site are deleted after the crawl.
+ *
+ * <p>Every checkpointIntervalSeconds and on stop the queue and the found URLs are saved
+ * to {@link CrawlCheckpointStore}, and the next run resumes the crawl from there.
+ *
+ * <p>Downloaded pages can be saved to {@link ResponseArchive}. In replayFromArchive mode the
+ * site is not crawled: the last saved responses go straight to parsing and writing and are
+ * lemmatized again even if unchanged; pages missing from the archive are left as they are.
+ */
+public class SiteCrawler {
+    private static final Logger logger = LoggerFactory.getLogger(SiteCrawler.class);
+    private static final long POLL_TIMEOUT_MILLIS = 200;
+    private static final long PROGRESS_LOG_INTERVAL_MILLIS = 10_000;
+
+    private final URL rootUrl;
+    private final SiteEntity mainSite;
+    private final IndexingPipeline pipeline;
+    private final LemmaFinder lemmaFinder;
+    private final CrawlerSettings crawlerSettings;
+    private final UrlCanonicalizer urlCanonicalizer;
+    private final NearDuplicateIndex nearDuplicateIndex;
+    private final CrawlTrapDetector trapDetector;
+    private final AtomicInteger trappedCount = new AtomicInteger(0);
+    private final CrawlFrontier frontier;
+    private CrawlBudget budget;
+    // why the crawl stopped taking new pages before the frontier ran out, null while within the budget
+    private volatile String budgetExhaustedReason = null;
+    private final AtomicInteger tooDeepCount = new AtomicInteger(0);
+    private VisitedUrlSet visitedUrls;
+    private final PageFetcher pageFetcher;
+    private final ConcurrencyController concurrencyController;
+    private final HostScheduler hostScheduler;
+    private final HostCircuitBreaker hostCircuitBreaker;
+    private final int hostMaxFailedProbes;
+    private final ErrorWindow siteErrors;
+    private final int siteErrorMinRequests;
+    private final double siteMaxErrorRate;
+    private final RetryPolicy retryPolicy;
+    private final AtomicInteger retriedCount = new AtomicInteger(0);
+    private final AtomicInteger failedCount = new AtomicInteger(0);
+    // pages still failing with a temporary error after all retries; the links on them are unknown
+    private final AtomicInteger givenUpCount = new AtomicInteger(0);
+    private final boolean respectRobotsTxt;
+    private volatile RobotsTxt robotsTxt = RobotsTxt.allowAll();
+    private final AtomicInteger disallowedCount = new AtomicInteger(0);
+    private Map<String, PageValidatorsDTO> knownPages = Collections.emptyMap();
+    private final Set<String> seenKnownPaths = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger unchangedCount = new AtomicInteger(0);
+
+    // a request is pending from the moment it is queued until its page is written or dropped
+    private final AtomicInteger pendingRequests = new AtomicInteger(0);
+    // requests taken from the frontier whose pages are not written yet, with the time they were taken;
+    // they go back to the frontier on resume
+    private final Map<CrawlRequest, Long> inFlightRequests = new ConcurrentHashMap<>();
+    // enqueue holds the read lock, a checkpoint the write lock, so a checkpoint never misses a url in between
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final CrawlCheckpointStore checkpointStore;
+    private final boolean replaying;
+    private volatile ResponseArchive responseArchive;
+    private final boolean resumeFromCheckpoint;
+    private final long checkpointIntervalMillis;
+    private boolean resumed = false;
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private volatile boolean stopped = false;
+
+    public SiteCrawler(URL rootUrl, SiteEntity mainSite, IndexingPipeline pipeline, LemmaFinder lemmaFinder,
+                       CrawlerSettings crawlerSettings) {
+        this.rootUrl = rootUrl;
+        this.mainSite = mainSite;
+        this.pipeline = pipeline;
+        this.lemmaFinder = lemmaFinder;
+        this.crawlerSettings = crawlerSettings;
+        this.urlCanonicalizer = createUrlCanonicalizer(mainSite.getUrl(), crawlerSettings.isCrawlQueryUrls());
+        this.nearDuplicateIndex = crawlerSettings.isNearDuplicateDetection()
+                ? new NearDuplicateIndex(crawlerSettings.getNearDuplicateMaxDistance()) : null;
+        this.trapDetector = crawlerSettings.isTrapDetection()
+                ? new CrawlTrapDetector(crawlerSettings.getTrapMinSamples(), crawlerSettings.getTrapMinNewContentRate(),
+                        crawlerSettings.getTrapMaxSegmentRepeats(), crawlerSettings.getTrapMaxPathSegments())
+                : null;
+        this.frontier = new CrawlFrontier(crawlerSettings.getFrontierCapacity());
+        this.budget = CrawlBudget.of(crawlerSettings, null);
+        this.visitedUrls = crawlerSettings.isVisitedBloomFilter()
+                ? VisitedUrlSet.bloomFiltered(crawlerSettings.getVisitedExpectedUrls(),
+                        crawlerSettings.getVisitedFalsePositiveRate())
+                : VisitedUrlSet.exact();
+        this.hostScheduler = pipeline.getHostScheduler();
+        this.hostCircuitBreaker = pipeline.getHostCircuitBreaker();
+        this.hostMaxFailedProbes = Math.max(1, crawlerSettings.getHostMaxFailedProbes());
+        this.siteErrors = new ErrorWindow(crawlerSettings.getSiteErrorWindowSeconds());
+        this.siteErrorMinRequests = Math.max(1, crawlerSettings.getSiteErrorMinRequests());
+        this.siteMaxErrorRate = crawlerSettings.getSiteMaxErrorRate();
+        this.retryPolicy = new RetryPolicy(crawlerSettings.getMaxRetries(), crawlerSettings.getRetryBaseDelayMillis(),
+                crawlerSettings.getRetryMaxDelayMillis());
+        this.respectRobotsTxt = crawlerSettings.isRespectRobotsTxt();
+        this.pageFetcher = new PageFetcher(pipeline.getHttpClient(), crawlerSettings.getMaxBodySize(), hostScheduler);
+        this.concurrencyController = new ConcurrencyController(crawlerSettings.getSiteMinConcurrency(),
+                crawlerSettings.getSiteInitialConcurrency(), crawlerSettings.getSiteConcurrency(),
+                crawlerSettings.isAdaptiveConcurrency());
+        this.replaying = crawlerSettings.isReplayFromArchive();
+        this.checkpointIntervalMillis = TimeUnit.SECONDS.toMillis(crawlerSettings.getCheckpointIntervalSeconds());
+        this.checkpointStore = checkpointIntervalMillis > 0 && !replaying
+                ? new CrawlCheckpointStore(Paths.get(crawlerSettings.getCheckpointDir())) : null;
+        // pages written before the interruption must still be in the DB, which only incremental indexing keeps
+        this.resumeFromCheckpoint = checkpointStore != null && crawlerSettings.isIncrementalIndexing();
+    }
+
+    public SiteEntity getMainSite() {
+        return mainSite;
+    }
+
+    private static UrlCanonicalizer createUrlCanonicalizer(String siteUrl, boolean allowQuery) {
+        try {
+            return new UrlCanonicalizer(siteUrl, allowQuery);
+        } catch (MalformedURLException e) {
+            throw new SiteIndexationErrorException("Invalid format site '" + siteUrl + "'");
+        }
+    }
+
+    /**
+     * Crawl budget with the site settings. Called before {@link #crawl()}.
+     */
+    public void setBudget(CrawlBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Pages of the site saved by the previous indexing. Called before {@link #crawl()}.
+     */
+    public void setKnownPages(List<PageValidatorsDTO> pages) {
+        Map<String, PageValidatorsDTO> pagesByPath = new HashMap<>(pages.size() * 2);
+        for (PageValidatorsDTO page : pages) {
+            pagesByPath.put(page.getPath(), page);
+            if (nearDuplicateIndex != null && page.getSimhash() != null && page.getAliasOf() == null) {
+                nearDuplicateIndex.add(page.getSimhash(), page.getPath());
+            }
+        }
+        this.knownPages = pagesByPath;
+    }
+
+    /**
+     * Crawls the site and returns when the queue is empty and all pages are written to the database.
+     *
+     * @throws CancellationException if the crawl was stopped through {@link #stop()}
+     */
+    public void crawl() {
+        pipeline.getPageWriter().loadSite(mainSite);
+        try {
+            if (replaying) {
+                replayArchive();
+                return;
+            }
+            if (checkpointStore != null && !resumeFromCheckpoint) {
+                checkpointStore.delete(mainSite.getUrl()); // a full crawl starts over
+            }
+            openResponseArchive();
+            crawlPages();
+            if (checkpointStore != null) {
+                checkpointStore.delete(mainSite.getUrl());
+            }
+            if (!knownPages.isEmpty()) {
+                removeDisappearedPages();
+            }
+        } finally {
+            closeResponseArchive();
+            pipeline.getPageWriter().forgetSite(mainSite);
+        }
+    }
+
+    private void openResponseArchive() {
+        if (!crawlerSettings.isResponseArchive()) {
+            return;
+        }
+        try {
+            responseArchive = ResponseArchive.open(Paths.get(crawlerSettings.getArchiveDir()), mainSite.getUrl(),
+                    crawlerSettings.getArchiveSegmentBytes());
+        } catch (IOException e) {
+            logger.warn("Failed to open the response archive of site '{}', pages are not archived",
+                    mainSite.getUrl(), e);
+        }
+    }
+
+    private void closeResponseArchive() {
+        ResponseArchive archive = responseArchive;
+        responseArchive = null;
+        if (archive == null) {
+            return;
+        }
+        try {
+            archive.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close the response archive of site '{}'", mainSite.getUrl(), e);
+        }
+    }
+
+    private void archive(FetchResult fetchResult) {
+        ResponseArchive archive = responseArchive;
+        if (archive == null) {
+            return;
+        }
+        try {
+            archive.append(fetchResult);
+        } catch (IOException e) {
+            logger.warn("Failed to archive '{}', pages of site '{}' are no longer archived in this crawl",
+                    fetchResult.getUrl(), mainSite.getUrl(), e);
+            closeResponseArchive();
+        }
+    }
+
+    /**
+     * Reindexes the site from the archive without the network and waits until all pages are written to the database.
+     */
+    private void replayArchive() {
+        Path archiveDir = Paths.get(crawlerSettings.getArchiveDir());
+        if (!ResponseArchive.exists(archiveDir, mainSite.getUrl())) {
+            throw new SiteIndexationErrorException("Site '" + mainSite.getUrl() + "' has no response archive in '"
+                    + archiveDir.toAbsolutePath() + "' to be re-indexed from");
+        }
+        int replayed;
+        try (ResponseArchive archive = ResponseArchive.open(archiveDir, mainSite.getUrl(),
+                crawlerSettings.getArchiveSegmentBytes())) {
+            replayed = archive.replay(this::replay);
+            while (!stopped && pendingRequests.get() > 0) {
+                TimeUnit.MILLISECONDS.sleep(POLL_TIMEOUT_MILLIS);
+            }
+        } catch (IOException e) {
+            throw new SiteIndexationErrorException("Failed to read the response archive of site '"
+                    + mainSite.getUrl() + "': " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop();
+            replayed = 0;
+        }
+        RuntimeException exception = failure.get();
+        if (exception != null) {
+            throw exception;
+        }
+        if (stopped) {
+            throw new CancellationException("Re-indexing of site '" + mainSite.getUrl() + "' has been stopped");
+        }
+        logger.info("Site '{}': {} archived pages re-indexed", mainSite.getUrl(), replayed);
+    }
+
+    private boolean replay(FetchResult archived) {
+        if (stopped) {
+            return false;
+        }
+        URL url;
+        try {
+            url = new URL(archived.getUrl());
+        } catch (MalformedURLException e) {
+            return true;
+        }
+        CrawlRequest request = new CrawlRequest(url, 0);
+        WebsiteScraperTask3 task = new WebsiteScraperTask3(url, mainSite, pageFetcher, lemmaFinder, urlCanonicalizer,
+                nearDuplicateIndex, knownPages);
+        task.setReindex(true);
+        pendingRequests.incrementAndGet();
+        inFlightRequests.put(request, System.nanoTime());
+        submitToStage(request, () -> pipeline.parse(() -> parse(request, task, archived)));
+        return !stopped;
+    }
+
+    private void crawlPages() {
+        budget.start();
+        if (respectRobotsTxt) {
+            robotsTxt = pipeline.getRobotsTxtCache().get(rootUrl);
+            if (robotsTxt.isUnreachable()) {
+                // stored pages are kept: the site is not known to have changed, only not to be crawlable now
+                throw new UnableToConnectToSiteException("robots.txt of site '" + mainSite.getUrl()
+                        + "' is unavailable, the site is not crawled until it can be read");
+            }
+            hostScheduler.setCrawlDelay(rootUrl.getHost(), robotsTxt.getCrawlDelayMillis());
+        }
+        if (!resumeFromCheckpoint || !restoreCheckpoint()) {
+            enqueue(new CrawlRequest(rootUrl, 0));
+            if (crawlerSettings.isSitemapSeeding()) {
+                seedFromSitemaps();
+            }
+        }
+        long lastProgressLog = System.currentTimeMillis();
+        long lastCheckpoint = System.currentTimeMillis();
+        try {
+            while (!stopped) {
+                if (budgetExhaustedReason == null && budget.exhaustedReason() != null) {
+                    exhaustBudget(budget.exhaustedReason());
+                }
+                concurrencyController.acquire();
+                CrawlRequest request = frontier.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (request == null) {
+                    concurrencyController.release();
+                    if (pendingRequests.get() == 0) {
+                        break; // nothing queued and nothing in progress - the site is done
+                    }
+                } else {
+                    dispatch(request);
+                }
+                if (System.currentTimeMillis() - lastProgressLog > PROGRESS_LOG_INTERVAL_MILLIS) {
+                    lastProgressLog = System.currentTimeMillis();
+                    logger.info("Site '{}': {} urls in frontier, {} pending, concurrency {}, stage queues {}",
+                            mainSite.getUrl(), frontier.size(), pendingRequests.get(), concurrencyController.getLimit(),
+                            pipeline.getQueueDepths());
+                }
+                if (checkpointStore != null && System.currentTimeMillis() - lastCheckpoint > checkpointIntervalMillis) {
+                    lastCheckpoint = System.currentTimeMillis();
+                    saveCheckpoint();
+                }
+            }
+        } catch (InterruptedException | RejectedExecutionException e) {
+            stop();
+        } finally {
+            if (checkpointStore != null && (stopped || failure.get() != null)) {
+                saveCheckpoint();
+            }
+            frontier.clear();
+        }
+
+        RuntimeException exception = failure.get();
+        if (exception != null) {
+            throw exception;
+        }
+        if (stopped) {
+            throw new CancellationException("Crawl of site '" + mainSite.getUrl() + "' has been stopped");
+        }
+        if (disallowedCount.get() > 0) {
+            logger.info("Site '{}': {} urls were skipped as disallowed by robots.txt",
+                    mainSite.getUrl(), disallowedCount.get());
+        }
+        if (frontier.getDroppedCount() > 0) {
+            logger.warn("Site '{}': {} urls were dropped because the frontier was full",
+                    mainSite.getUrl(), frontier.getDroppedCount());
+        }
+        if (tooDeepCount.get() > 0) {
+            logger.info("Site '{}': {} urls were deeper than the depth limit", mainSite.getUrl(), tooDeepCount.get());
+        }
+        if (trappedCount.get() > 0) {
+            logger.info("Site '{}': {} urls were skipped as crawl traps", mainSite.getUrl(), trappedCount.get());
+        }
+        if (!visitedUrls.isExact() && visitedUrls.getMaybeSeenCount() > 0) {
+            logger.warn("Site '{}': {} urls were skipped as maybe seen by the Bloom filter, up to about {} of them "
+                    + "may never have been crawled", mainSite.getUrl(), visitedUrls.getMaybeSeenCount(),
+                    visitedUrls.estimateMissedCount());
+        }
+        logger.info("Site '{}': {} pages and {} bytes fetched", mainSite.getUrl(), budget.getPages(), budget.getBytes());
+        if (retriedCount.get() > 0 || failedCount.get() > 0) {
+            logger.info("Site '{}': {} requests were retried, {} pages could not be fetched", mainSite.getUrl(),
+                    retriedCount.get(), failedCount.get());
+        }
+        if (!knownPages.isEmpty()) {
+            logger.info("Site '{}': {} of {} stored pages have not changed", mainSite.getUrl(),
+                    unchangedCount.get(), knownPages.size());
+        }
+    }
+
+    /**
+     * The budget is spent: new pages are no longer downloaded, the started ones are still written to the database.
+     */
+    private void exhaustBudget(String reason) {
+        budgetExhaustedReason = reason;
+        int dropped = frontier.clear();
+        pendingRequests.addAndGet(-dropped);
+        logger.info("Site '{}': crawl budget exhausted ({}), {} queued urls are not visited",
+                mainSite.getUrl(), reason, dropped);
+    }
+
+    /**
+     * @return true if all found pages of the site were visited
+     */
+    private boolean crawledCompletely() {
+        return frontier.getDroppedCount() == 0 && budgetExhaustedReason == null && tooDeepCount.get() == 0
+                && givenUpCount.get() == 0 && trappedCount.get() == 0
+                // a url the Bloom filter took for a visited one may be a page that still exists
+                && (visitedUrls.isExact() || visitedUrls.getMaybeSeenCount() == 0);
+    }
+
+    /**
+     * Adds pages from sitemap.xml to the queue, so deep pages need not be found through links
+     * and pages nothing links to are found too.
+     */
+    private void seedFromSitemaps() {
+        List<String> sitemaps = robotsTxt.getSitemaps().isEmpty()
+                ? List.of(rootUrl.getProtocol() + "://" + rootUrl.getAuthority() + "/sitemap.xml")
+                : robotsTxt.getSitemaps();
+        SitemapReader sitemapReader = new SitemapReader(pageFetcher, hostScheduler,
+                crawlerSettings.getSitemapMaxFiles(), crawlerSettings.getSitemapMaxUrls());
+        try {
+            int count = sitemapReader.read(sitemaps, this::seed);
+            logger.info("Site '{}': {} urls found in sitemaps, {} urls in frontier", mainSite.getUrl(), count,
+                    frontier.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop();
+        }
+    }
+
+    private boolean seed(SitemapUrl sitemapUrl) {
+        URL url = urlCanonicalizer.canonicalize(sitemapUrl.getLocation());
+        if (url != null) {
+            enqueue(new CrawlRequest(url, 1, sitemapUrl.getLastModified()));
+        }
+        return !stopped;
+    }
+
+    private boolean restoreCheckpoint() {
+        Optional<CrawlCheckpoint> checkpoint = checkpointStore.load(mainSite.getUrl());
+        if (checkpoint.isEmpty() || checkpoint.get().getRequests().isEmpty()) {
+            return false;
+        }
+        visitedUrls = checkpoint.get().getVisitedUrls();
+        for (CrawlRequest request : checkpoint.get().getRequests()) {
+            pendingRequests.incrementAndGet();
+            if (!frontier.offer(request)) {
+                pendingRequests.decrementAndGet();
+            }
+        }
+        resumed = true;
+        logger.info("Site '{}': resuming the crawl from a checkpoint of {} with {} urls to visit", mainSite.getUrl(),
+                new Date(checkpoint.get().getSavedAt()), frontier.size());
+        return true;
+    }
+
+    /**
+     * Called only from the thread that hands out URLs from the queue, so a request cannot get
+     * lost between the queue and inFlightRequests.
+     */
+    private void saveCheckpoint() {
+        List<CrawlRequest> requests;
+        CrawlCheckpoint checkpoint;
+        checkpointLock.writeLock().lock();
+        try {
+            requests = new ArrayList<>(inFlightRequests.keySet());
+            requests.addAll(frontier.snapshot());
+            checkpoint = new CrawlCheckpoint(mainSite.getUrl(), System.currentTimeMillis(), visitedUrls, requests);
+            checkpointStore.save(checkpoint);
+        } catch (IOException e) {
+            logger.warn("Failed to save a checkpoint of site '{}'", mainSite.getUrl(), e);
+            return;
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+        logger.info("Site '{}': checkpoint saved with {} urls to visit", mainSite.getUrl(), requests.size());
+    }
+
+    private void removeDisappearedPages() {
+        if (resumed) {
+            // pages fetched before the interruption were not seen by this run
+            logger.info("Site '{}': disappeared pages are checked on the next full crawl", mainSite.getUrl());
+            return;
+        }
+        if (!crawledCompletely()) {
+            // some pages were never visited, so a missing page does not mean it has gone from the site
+            logger.warn("Site '{}': disappeared pages are kept because the crawl was incomplete", mainSite.getUrl());
+            return;
+        }
+        List<Integer> disappearedPageIds = new ArrayList<>();
+        for (PageValidatorsDTO page : knownPages.values()) {
+            if (!seenKnownPaths.contains(page.getPath())) {
+                disappearedPageIds.add(page.getId());
+            }
+        }
+        if (!disappearedPageIds.isEmpty()) {
+            pipeline.getPageWriter().removePages(mainSite, disappearedPageIds);
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    private void dispatch(CrawlRequest request) throws InterruptedException {
+        if (trapDetector != null && request.getDepth() > 0 && trapDetector.isTrapped(request.getUrl())) {
+            // queued before its url pattern turned out to be a trap
+            trappedCount.incrementAndGet();
+            concurrencyController.release();
+            complete(request);
+            return;
+        }
+        // a retry has already taken its place in the budget
+        if (budgetExhaustedReason != null || request.getAttempt() == 0 && !budget.tryAcquirePage()) {
+            concurrencyController.release();
+            complete(request);
+            return;
+        }
+        inFlightRequests.put(request, System.nanoTime());
+        String host = request.getUrl().getHost();
+        boolean hostAvailable;
+        try {
+            hostAvailable = awaitHost(request, host);
+        } catch (InterruptedException e) {
+            concurrencyController.release();
+            abandon(request);
+            throw e;
+        }
+        if (!hostAvailable) {
+            concurrencyController.release();
+            abandon(request);
+            return;
+        }
+        try {
+            hostScheduler.acquire(host);
+            pipeline.acquireFetchPermit();
+        } catch (InterruptedException e) {
+            hostCircuitBreaker.release(host);
+            concurrencyController.release();
+            abandon(request);
+            throw e;
+        }
+        WebsiteScraperTask3 task = new WebsiteScraperTask3(request.getUrl(), mainSite, pageFetcher, lemmaFinder,
+                urlCanonicalizer, nearDuplicateIndex, knownPages);
+        task.setSitemapLastModified(request.getSitemapLastModified());
+        task.setRetriesLeft(retryPolicy.hasRetriesLeft(request));
+        try {
+            pipeline.fetch(() -> fetch(request, task));
+        } catch (RejectedExecutionException e) {
+            hostCircuitBreaker.release(host);
+            releaseFetchPermits();
+            abandon(request);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until {@link HostCircuitBreaker} allows a request to the host.
+     *
+     * @return false if the crawl was stopped or the host never answered the probe requests
+     */
+    private boolean awaitHost(CrawlRequest request, String host) throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = hostCircuitBreaker.tryAcquire(host)) > 0) {
+            int failedProbes = hostCircuitBreaker.getFailedProbes(host);
+            if (failedProbes >= hostMaxFailedProbes) {
+                fail(request, new UnableToConnectToSiteException("Host '" + host + "' did not respond to "
+                        + failedProbes + " probe requests in a row, the site is not crawled further"));
+            }
+            if (stopped) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.min(waitNanos, TimeUnit.MILLISECONDS.toNanos(POLL_TIMEOUT_MILLIS)));
+        }
+        return true;
+    }
+
+    private void fetch(CrawlRequest request, WebsiteScraperTask3 task) {
+        Optional<FetchResult> fetchResult = Optional.empty();
+        if (task.getKnownPage() != null) {
+            seenKnownPaths.add(task.getPagePath());
+        }
+        try {
+            if (!stopped) {
+                long startNanos = System.nanoTime();
+                try {
+                    fetchResult = task.fetch();
+                } finally {
+                    onFetched(request, task.getStatusCode(), System.nanoTime() - startNanos);
+                }
+            } else {
+                hostCircuitBreaker.release(request.getUrl().getHost());
+            }
+        } catch (SiteIndexationErrorException | UnableToConnectToSiteException e) {
+            fail(request, e); // the main page is malformed or unreachable, the site cannot be crawled
+        } catch (RuntimeException e) {
+            // a broken page, as a malformed url, costs only this page, like a failed request
+            logger.warn("Failed to fetch page {}", request, e);
+        } finally {
+            releaseFetchPermits();
+        }
+        if (fetchResult.isEmpty()) {
+            onFetchFailed(request, task);
+            return;
+        }
+        FetchResult result = fetchResult.get();
+        budget.addBytes(result.getBody().length);
+        if (result.isOk()) {
+            archive(result);
+        }
+        submitToStage(request, () -> pipeline.parse(() -> parse(request, task, result)));
+    }
+
+    /**
+     * @param statusCode response status code, -1 - no response, 0 - the request was not sent
+     */
+    private void onFetched(CrawlRequest request, int statusCode, long latencyNanos) {
+        String host = request.getUrl().getHost();
+        if (statusCode == 0) { // the stored copy was used without a request
+            hostCircuitBreaker.release(host);
+            return;
+        }
+        concurrencyController.onResponse(statusCode, latencyNanos);
+        hostCircuitBreaker.onResponse(host, statusCode);
+
+        // unlike the host breaker, the site also counts its own 4xx: a site that forbids every page is failed too
+        boolean error = statusCode < 0 || statusCode >= 400 && statusCode != 404 && statusCode != 410;
+        long now = System.nanoTime();
+        siteErrors.record(error, now);
+        if (!error) {
+            return;
+        }
+        int requests = siteErrors.getRequests(now);
+        int errors = siteErrors.getErrors(now);
+        if (requests >= siteErrorMinRequests && errors >= requests * siteMaxErrorRate) {
+            fail(request, new TooManyPageErrorsException(errors + " of the last " + requests + " requests to site '"
+                    + mainSite.getUrl() + "' failed, the last one with "
+                    + (statusCode < 0 ? "no response (timeout or connection error)" : "HTTP " + statusCode)));
+        }
+    }
+
+    /**
+     * The page was not downloaded: after a transient error the request is retried, after a
+     * permanent one the status code is written to the database.
+     */
+    private void onFetchFailed(CrawlRequest request, WebsiteScraperTask3 task) {
+        int statusCode = task.getStatusCode();
+        if (stopped) {
+            abandon(request);
+            return;
+        }
+        if (statusCode == 0) {
+            complete(request);
+            return;
+        }
+        if (RetryPolicy.isTransient(statusCode) && retryPolicy.hasRetriesLeft(request)) {
+            scheduleRetry(request);
+            return;
+        }
+        if (statusCode > 0 && statusCode < 400) { // not an error: not html, too large
+            complete(request);
+            return;
+        }
+        failedCount.incrementAndGet();
+        if (RetryPolicy.isTransient(statusCode)) {
+            givenUpCount.incrementAndGet();
+        }
+        // a stored copy outlives a temporary outage, only a permanent error replaces it
+        boolean recordFailure = statusCode > 0 && (!RetryPolicy.isTransient(statusCode) || task.getKnownPage() == null);
+        Page failedPage = recordFailure ? task.failedPage() : null;
+        if (failedPage == null) {
+            complete(request);
+            return;
+        }
+        PageWriteRequest writeRequest = new PageWriteRequest(failedPage, Collections.emptyMap(), error -> onWritten(request, error));
+        submitToStage(request, () -> {
+            try {
+                pipeline.persist(writeRequest);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        });
+    }
+
+    /**
+     * Returns the request to the queue after a pause. While the request waits it stays in
+     * inFlightRequests and gets into the checkpoint, and the download stage thread is free.
+     */
+    private void scheduleRetry(CrawlRequest request) {
+        CrawlRequest retry = request.nextAttempt();
+        long delayMillis = retryPolicy.delayMillis(retry.getAttempt());
+        logger.debug("Retrying {} in {} ms", retry, delayMillis);
+        retriedCount.incrementAndGet();
+        try {
+            pipeline.schedule(() -> requeue(request, retry), delayMillis);
+        } catch (RejectedExecutionException e) {
+            complete(request);
+        }
+    }
+
+    private void requeue(CrawlRequest request, CrawlRequest retry) {
+        checkpointLock.readLock().lock();
+        try {
+            if (stopped) {
+                abandon(request);
+                return;
+            }
+            inFlightRequests.remove(request);
+            if (budgetExhaustedReason != null || !frontier.offer(retry)) {
+                pendingRequests.decrementAndGet();
+            }
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    private void releaseFetchPermits() {
+        pipeline.releaseFetchPermit();
+        concurrencyController.release();
+    }
+
+    private void parse(CrawlRequest request, WebsiteScraperTask3 task, FetchResult fetchResult) {
+        if (stopped) {
+            abandon(request);
+            return;
+        }
+        ParsedPage parsedPage;
+        try {
+            parsedPage = fetchResult.isNotModified()
+                    ? task.parseStored(fetchResult, pipeline.loadStoredContent(task.getKnownPage().getId()))
+                    : task.parse(fetchResult);
+        } catch (Exception e) {
+            logger.warn("Failed to parse page {}", request, e);
+            complete(request);
+            return;
+        }
+        if (trapDetector != null) {
+            String trappedPattern = trapDetector.onPageParsed(request.getUrl(), parsedPage.isDuplicate(),
+                    parsedPage.getTextFingerprint());
+            if (trappedPattern != null) {
+                logger.info("Site '{}': url pattern '{}' looks like a crawl trap, its pages bring little new content;"
+                        + " {} urls of it found so far, the rest are not visited", mainSite.getUrl(), trappedPattern,
+                        trapDetector.getDiscoveredCount(trappedPattern));
+            }
+        }
+        if (!replaying) { // the archive is replayed as it is, links are not followed
+            for (URL subPageUrl : parsedPage.getSubPageUrls()) {
+                enqueue(new CrawlRequest(subPageUrl, request.getDepth() + 1));
+            }
+        }
+        if (!parsedPage.isIndexable()) {
+            logger.debug("Page {} asks not to be indexed", request);
+            seenKnownPaths.remove(task.getPagePath()); // a stored copy is removed after the crawl
+            complete(request);
+            return;
+        }
+        PageWriteRequest writeRequest;
+        if (parsedPage.isContentChanged()) {
+            writeRequest = new PageWriteRequest(parsedPage.getPage(), parsedPage.getLemmas(), error -> onWritten(request, error));
+        } else {
+            unchangedCount.incrementAndGet();
+            if (!validatorsChanged(task.getKnownPage(), parsedPage.getPage())) {
+                complete(request);
+                return;
+            }
+            writeRequest = PageWriteRequest.validatorsOnly(parsedPage.getPage(), error -> onWritten(request, error));
+        }
+        submitToStage(request, () -> {
+            try {
+                pipeline.persist(writeRequest);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        });
+    }
+
+    private static boolean validatorsChanged(PageValidatorsDTO knownPage, Page page) {
+        return !Objects.equals(knownPage.getEtag(), page.getEtag())
+                || !Objects.equals(knownPage.getLastModified(), page.getLastModified());
+    }
+
+    private void submitToStage(CrawlRequest request, Runnable submission) {
+        try {
+            submission.run();
+        } catch (RejectedExecutionException e) {
+            logger.debug("Pipeline no longer accepts {}", request);
+            abandon(request);
+        }
+    }
+
+    private void fail(CrawlRequest request, RuntimeException e) {
+        if (failure.compareAndSet(null, e)) {
+            logger.error("Crawl of site '{}' failed on {}", mainSite.getUrl(), request, e);
+        }
+        stop();
+    }
+
+    /**
+     * The page is written to the database. If the write failed, the site crawl fails, and the
+     * page stays in inFlightRequests and gets into the checkpoint.
+     */
+    private void onWritten(CrawlRequest request, RuntimeException error) {
+        if (error == null) {
+            complete(request);
+            return;
+        }
+        fail(request, error);
+        abandon(request);
+    }
+
+    private void enqueue(CrawlRequest request) {
+        if (budgetExhaustedReason != null) {
+            return;
+        }
+        if (!budget.allowsDepth(request.getDepth())) {
+            tooDeepCount.incrementAndGet();
+            return;
+        }
+        if (!robotsTxt.isAllowed(request.getUrl().getFile())) {
+            disallowedCount.incrementAndGet();
+            return;
+        }
+        checkpointLock.readLock().lock();
+        try {
+            if (!visitedUrls.claim(request.getUrl().toString())) {
+                frontier.addInlink(request.getUrl().toString()); // already queued by another page
+                return;
+            }
+            String trapReason = trapDetector != null && request.getDepth() > 0
+                    ? trapDetector.check(request.getUrl()) : null;
+            if (trapReason != null) {
+                trappedCount.incrementAndGet();
+                logger.debug("Skipped {}: {}", request, trapReason);
+                return;
+            }
+            pendingRequests.incrementAndGet();
+            if (!frontier.offer(request)) {
+                pendingRequests.decrementAndGet();
+            }
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    private void complete(CrawlRequest request) {
+        Long takenNanos = inFlightRequests.remove(request);
+        pendingRequests.decrementAndGet();
+        if (takenNanos != null) {
+            pipeline.getMetrics().recordPage(System.nanoTime() - takenNanos);
+        }
+    }
+
+    /**
+     * The request was dropped because the crawl stopped, the page was not processed. It stays in
+     * inFlightRequests to get into the checkpoint and be processed on the next run.
+     */
+    private void abandon(CrawlRequest request) {
+        pendingRequests.decrementAndGet();
+    }
+}
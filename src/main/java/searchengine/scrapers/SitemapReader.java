@@ -0,0 +1,170 @@
+package searchengine.scrapers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Reads sitemap.xml and sitemap index files as a stream (StAX), so the file size is not bounded
+ * by memory. Nested sitemaps are read only from their own host, and the number of files and
+ * URLs is limited.
+ */
+public class SitemapReader {
+    private static final Logger logger = LoggerFactory.getLogger(SitemapReader.class);
+
+    private final PageFetcher pageFetcher;
+    private final HostScheduler hostScheduler;
+    private final XMLInputFactory xmlInputFactory;
+    private final int maxFiles;
+    private final int maxUrls;
+
+    public SitemapReader(PageFetcher pageFetcher, HostScheduler hostScheduler, int maxFiles, int maxUrls) {
+        this.pageFetcher = pageFetcher;
+        this.hostScheduler = hostScheduler;
+        this.maxFiles = maxFiles;
+        this.maxUrls = maxUrls;
+        this.xmlInputFactory = XMLInputFactory.newFactory();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    }
+
+    /**
+     * Passes all pages from the sitemap to consumer while it returns true.
+     *
+     * @return how many pages were passed
+     */
+    public int read(Collection<String> sitemapUrls, Predicate<SitemapUrl> consumer) throws InterruptedException {
+        Deque<String> queue = new ArrayDeque<>(sitemapUrls);
+        Set<String> seenSitemaps = new HashSet<>(sitemapUrls);
+        Counter counter = new Counter();
+        int filesRead = 0;
+        while (!queue.isEmpty() && filesRead < maxFiles && counter.urls < maxUrls && !counter.stopped) {
+            String sitemapUrl = queue.poll();
+            URL url;
+            try {
+                url = new URL(sitemapUrl);
+            } catch (MalformedURLException e) {
+                logger.debug("Skipped malformed sitemap url '{}'", sitemapUrl);
+                continue;
+            }
+            hostScheduler.acquire(url.getHost());
+            filesRead++;
+            try {
+                Collection<String> childSitemaps = pageFetcher.read(sitemapUrl, in -> {
+                    try {
+                        return readFile(in, consumer, counter);
+                    } catch (XMLStreamException e) {
+                        throw new IOException(e.getMessage(), e);
+                    }
+                });
+                for (String childSitemap : childSitemaps) {
+                    if (isSameHost(url, childSitemap) && seenSitemaps.add(childSitemap)) {
+                        queue.add(childSitemap);
+                    }
+                }
+            } catch (IOException e) {
+                logger.info("Failed to read sitemap '{}': {}", sitemapUrl, e.getMessage());
+            }
+        }
+        if (!queue.isEmpty() && filesRead >= maxFiles) {
+            logger.info("{} sitemaps were not read: at most {} sitemaps are read per site", queue.size(), maxFiles);
+        }
+        return counter.urls;
+    }
+
+    /**
+     * @return nested sitemaps if this is an index file
+     */
+    private Collection<String> readFile(InputStream in, Predicate<SitemapUrl> consumer, Counter counter)
+            throws XMLStreamException {
+        Collection<String> childSitemaps = new HashSet<>();
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+        try {
+            String location = null;
+            String lastModified = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "url":
+                        case "sitemap":
+                            location = null;
+                            lastModified = null;
+                            break;
+                        case "loc":
+                            location = reader.getElementText().trim();
+                            break;
+                        case "lastmod":
+                            lastModified = reader.getElementText().trim();
+                            break;
+                        default:
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && location != null) {
+                    if (reader.getLocalName().equals("sitemap")) {
+                        childSitemaps.add(location);
+                    } else if (reader.getLocalName().equals("url")) {
+                        counter.urls++;
+                        if (!consumer.test(new SitemapUrl(location, parseLastModified(lastModified)))) {
+                            counter.stopped = true;
+                        }
+                        if (counter.stopped || counter.urls >= maxUrls) {
+                            break;
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return childSitemaps;
+    }
+
+    private static boolean isSameHost(URL sitemapUrl, String childSitemap) {
+        try {
+            return new URL(childSitemap).getHost().equalsIgnoreCase(sitemapUrl.getHost());
+        } catch (MalformedURLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * lastmod is written in the W3C Datetime format: a date or a date with time and time zone.
+     */
+    static Instant parseLastModified(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return value.length() == 10
+                    ? LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant()
+                    : OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static class Counter {
+        private int urls = 0;
+        private boolean stopped = false;
+    }
+}
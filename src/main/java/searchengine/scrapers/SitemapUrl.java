@@ -0,0 +1,19 @@
+package searchengine.scrapers;
+
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * A &lt;url&gt; entry of sitemap.xml: the page URL and, if given, the time of its last change.
+ */
+@Getter
+public class SitemapUrl {
+    private final String location;
+    private final Instant lastModified;
+
+    public SitemapUrl(String location, Instant lastModified) {
+        this.location = location;
+        this.lastModified = lastModified;
+    }
+}
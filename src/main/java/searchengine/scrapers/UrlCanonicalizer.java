@@ -0,0 +1,175 @@
+package searchengine.scrapers;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Brings links to pages of a site to one form, so different variants of one page URL are not
+ * downloaded and saved again: the scheme and host are taken from the site (with and without www
+ * is one host), links to another port are rejected, the default port, the fragment, ;jsessionid,
+ * repeated "/" and "." and ".." segments are removed, ad tracking tags are removed from the query
+ * and the remaining parameters are sorted. The path always ends with "/", as it was stored before.
+ *
+ * <p>Links with query parameters are not crawled by default (allowQuery = false).
+ */
+public class UrlCanonicalizer {
+    private static final Pattern SKIPPED_EXTENSION = Pattern.compile(
+            ".*\\.(jpe?g|png|gif|svg|bmp|webp|ico|pdf|docx?|xlsx?|pptx?|css|js|zip|rar|7z|gz|mp3|mp4|avi|xml)$",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern EXCLUDED_PATH = Pattern.compile("tags|tagged");
+    private static final Pattern NUMERIC_SEGMENT = Pattern.compile("\\d+");
+    private static final Pattern REPEATED_SLASHES = Pattern.compile("/{2,}");
+    private static final Pattern SESSION_ID = Pattern.compile(";jsessionid=[^/]*", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TRACKING_PARAMETER = Pattern.compile(
+            "utm_[a-z_]+|gclid|fbclid|yclid|ysclid|_openstat|mc_cid|mc_eid|_ga|_gl", Pattern.CASE_INSENSITIVE);
+
+    private final String origin;
+    private final String host;
+    private final int port;
+    private final String rootPath;
+    private final boolean allowQuery;
+
+    /**
+     * @param siteUrl site URL from the settings, for example "https://www.site.ru/" or "https://site.ru/blog/"
+     */
+    public UrlCanonicalizer(String siteUrl, boolean allowQuery) throws MalformedURLException {
+        URL url = new URL(siteUrl);
+        this.host = withoutWww(url.getHost().toLowerCase(Locale.ROOT));
+        this.origin = url.getProtocol().toLowerCase(Locale.ROOT) + "://" + url.getHost().toLowerCase(Locale.ROOT)
+                + (isDefaultPort(url) ? "" : ":" + url.getPort());
+        this.port = explicitPort(url);
+        String path = url.getPath().isEmpty() ? "/" : url.getPath();
+        this.rootPath = path.endsWith("/") ? path : path + "/";
+        this.allowQuery = allowQuery;
+    }
+
+    /**
+     * @param absoluteUrl an absolute url from a link or sitemap.xml
+     * @return the canonical url of a site page to crawl, or null if it is not crawled
+     * (another site, the main page, a file, a service address)
+     */
+    public URL canonicalize(String absoluteUrl) {
+        URL url = normalize(absoluteUrl);
+        return url != null && shouldCrawl(url) ? url : null;
+    }
+
+    /**
+     * Brings the url to its canonical form without the crawler's filters, so that any page of
+     * the site, including the main page and urls with a query, is stored under one path.
+     *
+     * @return the canonical url or null if the url does not belong to the site
+     */
+    public URL normalize(String absoluteUrl) {
+        URL url;
+        try {
+            url = new URL(absoluteUrl);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+        String protocol = url.getProtocol().toLowerCase(Locale.ROOT);
+        if (!(protocol.equals("http") || protocol.equals("https"))
+                || !withoutWww(url.getHost().toLowerCase(Locale.ROOT)).equals(host)
+                || explicitPort(url) != port) { // another port is another server
+            return null;
+        }
+        String path = normalizePath(url.getPath());
+        if (!path.startsWith(rootPath) && !(path + "/").equals(rootPath)) {
+            return null;
+        }
+        String query = canonicalQuery(url.getQuery());
+        String canonical = origin + (path.endsWith("/") ? path : path + "/") + (query == null ? "" : "?" + query);
+        try {
+            return new URL(canonical);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the url leads to the main page of the site, which {@link #canonicalize(String)} rejects
+     */
+    public boolean isMainPage(String absoluteUrl) {
+        URL url = normalize(absoluteUrl);
+        return url != null && url.getPath().equals(rootPath) && url.getQuery() == null;
+    }
+
+    private boolean shouldCrawl(URL url) {
+        String path = url.getPath();
+        if (path.equals(rootPath)) {
+            return false; // the main page is crawled first anyway
+        }
+        if (SKIPPED_EXTENSION.matcher(lastSegment(path)).matches() || EXCLUDED_PATH.matcher(path).find()
+                || NUMERIC_SEGMENT.matcher(lastSegment(path)).matches()) {
+            return false;
+        }
+        return url.getQuery() == null || allowQuery;
+    }
+
+    private static String normalizePath(String rawPath) {
+        String path = SESSION_ID.matcher(rawPath).replaceAll("");
+        path = REPEATED_SLASHES.matcher(path).replaceAll("/");
+        if (!path.contains("/.")) {
+            return path.isEmpty() ? "/" : path;
+        }
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : path.split("/")) {
+            if (segment.equals("..")) {
+                segments.pollLast();
+            } else if (!segment.isEmpty() && !segment.equals(".")) {
+                segments.addLast(segment);
+            }
+        }
+        boolean directory = path.endsWith("/") || path.endsWith("/.") || path.endsWith("/..");
+        String normalized = "/" + String.join("/", segments);
+        return directory && !normalized.endsWith("/") ? normalized + "/" : normalized;
+    }
+
+    private static String lastSegment(String path) {
+        String trimmed = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        return trimmed.substring(trimmed.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @return the parameters without tags, sorted, or null if no parameters are left
+     */
+    private static String canonicalQuery(String query) {
+        if (query == null || query.isEmpty()) {
+            return null;
+        }
+        List<String> parameters = new ArrayList<>();
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = equals >= 0 ? parameter.substring(0, equals) : parameter;
+            if (!name.isEmpty() && !TRACKING_PARAMETER.matcher(name).matches()) {
+                parameters.add(parameter);
+            }
+        }
+        if (parameters.isEmpty()) {
+            return null;
+        }
+        Collections.sort(parameters);
+        return String.join("&", parameters);
+    }
+
+    private static String withoutWww(String host) {
+        return host.startsWith("www.") ? host.substring(4) : host;
+    }
+
+    /**
+     * @return the port or -1 for the default port of the scheme, so that http and https links are the same page
+     */
+    private static int explicitPort(URL url) {
+        return isDefaultPort(url) ? -1 : url.getPort();
+    }
+
+    private static boolean isDefaultPort(URL url) {
+        return url.getPort() == -1 || url.getPort() == url.getDefaultPort();
+    }
+}
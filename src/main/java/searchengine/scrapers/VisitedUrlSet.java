@@ -0,0 +1,128 @@
+package searchengine.scrapers;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The urls of one site found so far. Keeps 64-bit url fingerprints instead of strings and
+ * lets a url be claimed atomically exactly once, without querying the DB.
+ *
+ * <p>In the Bloom filter mode the memory is fixed and does not grow with the site, but a small
+ * share of new urls (falsePositiveRate) is taken for visited ones. Such rejections are counted,
+ * so the crawl can report them and not treat itself as complete.
+ */
+public class VisitedUrlSet {
+    private static final int LOCK_STRIPES = 64;
+    private static final byte EXACT = 0;
+    private static final byte BLOOM_FILTER = 1;
+
+    private final Set<Long> fingerprints;
+    private final BloomFilter bloomFilter;
+    private final Object[] locks;
+    private final LongAdder added = new LongAdder();
+    private final LongAdder maybeSeen = new LongAdder();
+
+    private VisitedUrlSet(Set<Long> fingerprints, BloomFilter bloomFilter) {
+        this.fingerprints = fingerprints;
+        this.bloomFilter = bloomFilter;
+        this.locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public static VisitedUrlSet exact() {
+        return new VisitedUrlSet(ConcurrentHashMap.newKeySet(), null);
+    }
+
+    public static VisitedUrlSet bloomFiltered(long expectedUrls, double falsePositiveRate) {
+        return new VisitedUrlSet(null, new BloomFilter(expectedUrls, falsePositiveRate));
+    }
+
+    /**
+     * @return true only for the first call with the given URL
+     */
+    public boolean claim(String url) {
+        long fingerprint = UrlFingerprint.of(url);
+        if (bloomFilter == null) {
+            return fingerprints.add(fingerprint);
+        }
+        synchronized (locks[(int) (fingerprint & (LOCK_STRIPES - 1))]) {
+            if (bloomFilter.mightContain(fingerprint)) {
+                maybeSeen.increment(); // a repeated url or, rarely, a new one the filter mistakes for it
+                return false;
+            }
+            bloomFilter.put(fingerprint);
+            added.increment();
+            return true;
+        }
+    }
+
+    /**
+     * @return false in the Bloom filter mode, where a new url may be taken for a visited one
+     */
+    public boolean isExact() {
+        return bloomFilter == null;
+    }
+
+    /**
+     * @return how many urls the Bloom filter rejected as possibly visited; 0 for the exact set
+     */
+    public long getMaybeSeenCount() {
+        return maybeSeen.sum();
+    }
+
+    /**
+     * @return an upper estimate of how many of the rejected urls were in fact new and were never crawled
+     */
+    public long estimateMissedCount() {
+        if (bloomFilter == null) {
+            return 0;
+        }
+        double rate = Math.min(bloomFilter.falsePositiveRate(), 0.5);
+        return Math.min(maybeSeen.sum(), Math.round(Math.ceil(added.sum() * rate / (1 - rate))));
+    }
+
+    public boolean isVisited(String url) {
+        long fingerprint = UrlFingerprint.of(url);
+        return bloomFilter == null ? fingerprints.contains(fingerprint) : bloomFilter.mightContain(fingerprint);
+    }
+
+    /**
+     * Saves the set for a crawl checkpoint. The caller must make sure no new URLs are added
+     * while it is written.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        if (bloomFilter != null) {
+            out.writeByte(BLOOM_FILTER);
+            bloomFilter.writeTo(out);
+            return;
+        }
+        out.writeByte(EXACT);
+        Long[] snapshot = fingerprints.toArray(new Long[0]);
+        out.writeInt(snapshot.length);
+        for (Long fingerprint : snapshot) {
+            out.writeLong(fingerprint);
+        }
+    }
+
+    public static VisitedUrlSet readFrom(DataInput in) throws IOException {
+        byte kind = in.readByte();
+        if (kind == BLOOM_FILTER) {
+            return new VisitedUrlSet(null, BloomFilter.readFrom(in));
+        }
+        if (kind != EXACT) {
+            throw new IOException("Unknown visited url set kind " + kind);
+        }
+        int size = in.readInt();
+        Set<Long> fingerprints = ConcurrentHashMap.newKeySet(size);
+        for (int i = 0; i < size; i++) {
+            fingerprints.add(in.readLong());
+        }
+        return new VisitedUrlSet(fingerprints, null);
+    }
+}
@@ -1,235 +1,333 @@
 package searchengine.scrapers;
 
-import lombok.SneakyThrows;
-import org.jsoup.Connection;
-import org.jsoup.HttpStatusException;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import searchengine.dto.entities.PageValidatorsDTO;
 import searchengine.exceptions.*;
 import searchengine.model.Page;
 import searchengine.model.SiteEntity;
-import searchengine.services.IndexingService;
-import searchengine.services.PageCRUDService;
-import searchengine.services.SiteCRUDService;
+import searchengine.services.LemmaFinder;
+import searchengine.util.ContentHash;
+import searchengine.util.SimHash;
 import searchengine.util.Verifier;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.net.URL;
-import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.concurrent.RecursiveAction;
-import java.util.concurrent.atomic.AtomicInteger;
 
-public class WebsiteScraperTask3 extends RecursiveAction {
+/**
+ * Processing of one page of a site, split into pipeline stages: {@link #fetch()} runs in the
+ * download pool, {@link #parse(FetchResult)} in the parse and lemmatize pool.
+ * The result is written to the database by {@link searchengine.services.indexers.PageBatchWriter}.
+ * If the page is already in the database (knownPage), the request is sent as conditional, and
+ * an unchanged page is not lemmatized again. A near-exact copy of an already indexed page
+ * (see {@link NearDuplicateIndex}) is saved as an alias of the original without lemmas.
+ */
+public class WebsiteScraperTask3 {
     private static final Logger logger = LoggerFactory.getLogger(WebsiteScraperTask3.class);
 
     private final URL pageUrl;
     private final SiteEntity mainSite;
-    private final SiteCRUDService siteCRUDService;
-    private final PageCRUDService pageCRUDService;
-    private final IndexingService indexingService;
-    private final List<WebsiteScraperTask3> taskList = new ArrayList<>();
-
-    private static final int PAGE_MARGIN_OF_ERROR = 500000;
-    public static final AtomicInteger pageErrorCount = new AtomicInteger(0);
-
-    private Optional<Document> doc = Optional.empty();
-    private boolean existsInDB = false;
-    private boolean isPageMainSite = false;
-
-    public WebsiteScraperTask3(URL pageUrl, SiteEntity mainSite, SiteCRUDService siteCRUDService,
-                               PageCRUDService pageCRUDService, IndexingService indexingService) {
+    private final PageFetcher pageFetcher;
+    private final LemmaFinder lemmaFinder;
+    private final UrlCanonicalizer urlCanonicalizer;
+    private final NearDuplicateIndex nearDuplicateIndex;
+    private final PageValidatorsDTO knownPage;
+    private final String pagePath;
+    private Instant sitemapLastModified;
+    private int statusCode = 0;
+    private boolean retriesLeft = false;
+    private boolean reindex = false;
+
+
+    private final boolean isPageMainSite;
+
+    public WebsiteScraperTask3(URL pageUrl, SiteEntity mainSite, PageFetcher pageFetcher, LemmaFinder lemmaFinder,
+                               UrlCanonicalizer urlCanonicalizer, NearDuplicateIndex nearDuplicateIndex,
+                               Map<String, PageValidatorsDTO> knownPages) {
         this.pageUrl = pageUrl;
         this.mainSite = mainSite;
-        this.siteCRUDService = siteCRUDService;
-        this.pageCRUDService = pageCRUDService;
-        this.indexingService = indexingService;
+        this.pageFetcher = pageFetcher;
+        this.lemmaFinder = lemmaFinder;
+        this.urlCanonicalizer = urlCanonicalizer;
+        this.nearDuplicateIndex = nearDuplicateIndex;
+        this.isPageMainSite = isMainPage(pageUrl, mainSite.getUrl());
+        this.pagePath = pagePathOf(pageUrl, mainSite.getUrl());
+        this.knownPage = knownPages.get(pagePath);
+    }
+
+    /**
+     * @param pageUrl canonical URL of the page, see {@link UrlCanonicalizer}
+     * @return the path the page is stored under in the database
+     */
+    public static String pagePathOf(URL pageUrl, String mainSiteUrl) {
+        // the main page is stored by its full url
+        return isMainPage(pageUrl, mainSiteUrl) ? pageUrl.toString() : pageUrl.getFile();
+    }
+
+    private static boolean isMainPage(URL pageUrl, String mainSiteUrl) {
+        String pageUrlString = pageUrl.toString();
+        return pageUrlString.equals(mainSiteUrl) || pageUrlString.equals(mainSiteUrl + "/");
     }
 
     public SiteEntity getMainSite() {
         return mainSite;
     }
 
-    @SneakyThrows
-    @Override
-    protected void compute() {
-        if (Thread.currentThread().isInterrupted()) {
-            logger.warn("Task interrupted before execution: {}", pageUrl);
-            return;
+    public String getPagePath() {
+        return pagePath;
+    }
+
+    public PageValidatorsDTO getKnownPage() {
+        return knownPage;
+    }
+
+    /**
+     * @param sitemapLastModified lastmod of the page from sitemap.xml or null
+     */
+    public void setSitemapLastModified(Instant sitemapLastModified) {
+        this.sitemapLastModified = sitemapLastModified;
+    }
+
+    /**
+     * @return response status code, -1 if there was no response, or 0 if the request was not sent
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @param retriesLeft true - a transient error of the main page does not stop the site indexing yet,
+     *                    the request will be retried
+     */
+    public void setRetriesLeft(boolean retriesLeft) {
+        this.retriesLeft = retriesLeft;
+    }
+
+    /**
+     * @param reindex true - the page is lemmatized again even if its content has not changed
+     */
+    public void setReindex(boolean reindex) {
+        this.reindex = reindex;
+    }
+
+    /**
+     * Record of a page that could not be downloaded because of a permanent error: the status
+     * code without content and lemmas. Replaces the saved copy of the page.
+     *
+     * @return null if such a record is already saved
+     */
+    public Page failedPage() {
+        if (knownPage != null && knownPage.getCode() == statusCode && knownPage.getContentHash() == null) {
+            return null;
         }
+        Page page = new Page();
+        if (knownPage != null) {
+            page.setId(knownPage.getId());
+        }
+        page.setPath(pagePath);
+        page.setSite(mainSite);
+        page.setCode(statusCode);
+        page.setContent("");
+        return page;
+    }
 
-        Instant start = Instant.now();
-        String mainSiteUrl = mainSite.getUrl();
+    /**
+     * Download stage.
+     *
+     * @return the server response or an empty Optional if the page should not be indexed
+     */
+    public Optional<FetchResult> fetch() {
         String pageUrlString = pageUrl.toString();
-        isPageMainSite = pageUrlString.equals(mainSiteUrl) || pageUrlString.equals(mainSiteUrl + "/");
-
-        if (!Verifier.siteIsValidFormat(pageUrlString) && isPageMainSite) {
+        if (isPageMainSite && !Verifier.siteIsValidFormat(pageUrlString)) {
             throw new SiteIndexationErrorException("Invalid format site '" + pageUrlString + "'");
         }
 
-        Page page = new Page();
-        int httpCode = 0;
-
+        if (storedCopyIsCurrent()) {
+            return Optional.of(FetchResult.notModifiedSinceStored(pageUrlString, knownPage.getEtag(),
+                    knownPage.getLastModified()));
+        }
         try {
-            Connection connection = Jsoup.connect(pageUrlString);
-            Connection.Response response = connection.execute();
-            httpCode = response.statusCode();
-            doc = Optional.of(connection.userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6")
-                    .referrer("http://www.google.com").get());
-        } catch (HttpStatusException e) {
-            httpCode = e.getStatusCode();
-            page.setCode(httpCode);
-            handlePageError(pageUrlString, e);
+            FetchResult fetchResult = knownPage == null
+                    ? pageFetcher.fetch(pageUrlString)
+                    : pageFetcher.fetch(pageUrlString, knownPage.getEtag(), knownPage.getLastModified());
+            statusCode = fetchResult.getStatusCode();
+            if (fetchResult.isOk() || fetchResult.isNotModified()) {
+                return Optional.of(fetchResult);
+            }
+            if (fetchResult.getOutcome() == FetchResult.Outcome.HTTP_ERROR || isPageMainSite) {
+                handlePageError(pageUrlString, fetchResult.failureException());
+            } else {
+                logger.debug("Page '{}' is not indexed: {}", pageUrlString, fetchResult.getOutcome());
+            }
         } catch (IOException e) {
+            statusCode = -1;
             logger.warn("IOException with site pageUrlString: {}", pageUrlString, e);
             handlePageError(pageUrlString, e);
         }
+        return Optional.empty();
+    }
 
-        Elements subPages = new Elements();
-        String content = "";
-
-        if (doc.isPresent()) {
-            subPages = doc.get().select("a[href]");
-            content = doc.get().html();
-        } else {
-            logger.warn("Returned an empty doc");
-            return;
+    /**
+     * The saved copy is up to date if by the sitemap the page has not changed since its Last-Modified date.
+     */
+    private boolean storedCopyIsCurrent() {
+        if (knownPage == null || knownPage.getLastModified() == null || sitemapLastModified == null) {
+            return false;
         }
+        try {
+            Instant storedLastModified = ZonedDateTime.parse(knownPage.getLastModified(),
+                    DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return !sitemapLastModified.isAfter(storedLastModified);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
 
-        if (Thread.currentThread().isInterrupted()) {
-            logger.warn("Task interrupted during document fetching: {}", pageUrlString);
-            return;
+    /**
+     * Parse stage: builds the page entity, collects its lemmas and links to other pages of the site.
+     * The page is parsed in one streaming pass ({@link PageStreamReader}), the source HTML is
+     * saved to the database. Respects noindex/nofollow from meta robots and the X-Robots-Tag
+     * header, and links with rel="nofollow".
+     */
+    public ParsedPage parse(FetchResult fetchResult) throws IOException {
+        String contentHash = ContentHash.of(fetchResult.getBody());
+        String content = fetchResult.html();
+        boolean contentChanged = reindex || knownPage == null || !contentHash.equals(knownPage.getContentHash());
+        PageContent pageContent = PageStreamReader.read(content, pageUrl.toString(), contentChanged);
+        URL canonicalUrl = canonicalUrlOf(pageContent);
+        if (canonicalUrl != null) {
+            return duplicatePage(pageContent, fetchResult, canonicalUrl);
+        }
+        if (!contentChanged) {
+            return unchangedPage(pageContent, fetchResult);
         }
 
-        String path = pageUrl.getPath();
-        page.setPath(isPageMainSite ? pageUrlString : path);
-        page.setSite(mainSite);
+        Page page = newPage(fetchResult);
         page.setContent(content);
-        page.setCode(httpCode);
-
-        synchronized (pageCRUDService) {
-            try {
-                existsInDB = pageCRUDService.existsByPathAndSite(page.getPath(), mainSite);
-                if (!existsInDB) {
-                    Instant beforeCreatingPage = Instant.now();
-                    pageCRUDService.create(page);
-                    Instant afterCreatingPage = Instant.now();
-                    long durationOfCreatingPage = Duration.between(beforeCreatingPage, afterCreatingPage).toMillis();
-                    logger.debug("Duration of creating a page: {}", durationOfCreatingPage);
-                    logger.info("Page has been added to DB: {}", pageUrlString);
-                }
-            } catch (Exception e) {
-                logger.warn("Page '{}' from site '{}' failed to add to DB.", page.getPath(), page.getSite().getUrl());
+        page.setCode(fetchResult.getStatusCode());
+        page.setContentHash(contentHash);
+
+        String robotsDirectives = robotsDirectives(pageContent, fetchResult);
+        boolean indexable = !hasDirective(robotsDirectives, "noindex");
+        List<URL> subPageUrls = hasDirective(robotsDirectives, "nofollow")
+                ? Collections.emptyList() : extractSubPageUrls(pageContent);
+        if (!indexable) {
+            return new ParsedPage(page, Collections.emptyMap(), subPageUrls, false, true, false, null);
+        }
+        String text = pageContent.getText();
+        long textFingerprint = ContentHash.fingerprint(text);
+        if (nearDuplicateIndex != null && !isPageMainSite) {
+            page.setSimhash(SimHash.of(text));
+            String originalPath = page.getSimhash() == null
+                    ? null : nearDuplicateIndex.findOrAdd(page.getSimhash(), pagePath);
+            if (originalPath != null) {
+                // a mirror of a page that is already indexed: kept as an alias, without lemmas
+                logger.debug("Page '{}' nearly duplicates '{}'", pagePath, originalPath);
+                page.setAliasOf(originalPath);
+                return new ParsedPage(page, Collections.emptyMap(), subPageUrls, true, true, true, textFingerprint);
             }
         }
+        return new ParsedPage(page, lemmaFinder.collectLemmas(text), subPageUrls, true, true, false,
+                textFingerprint);
+    }
 
-        if (Thread.currentThread().isInterrupted()) {
-            logger.warn("Task interrupted after saving page to database: {}", pageUrlString);
-            return;
+    /**
+     * Parsing of a page the server answered with 304: links are taken from the saved copy.
+     */
+    public ParsedPage parseStored(FetchResult notModified, String storedContent) throws IOException {
+        PageContent pageContent = PageStreamReader.read(storedContent, pageUrl.toString(), false);
+        URL canonicalUrl = canonicalUrlOf(pageContent);
+        if (canonicalUrl != null) {
+            return duplicatePage(pageContent, notModified, canonicalUrl);
         }
+        return unchangedPage(pageContent, notModified);
+    }
 
-        mainSite.setStatusTime(LocalDateTime.now());
-        siteCRUDService.updateById(mainSite);
-
-        Page pageWithId = pageCRUDService.getByPathAndSite(page.getPath(), mainSite);
-
-        if (!existsInDB) {
-            indexingService.indexLemmasForWebsiteScraper(content, pageWithId);
-        }
+    private ParsedPage unchangedPage(PageContent pageContent, FetchResult fetchResult) {
+        Page page = newPage(fetchResult);
+        page.setContentHash(knownPage.getContentHash());
+        String robotsDirectives = robotsDirectives(pageContent, fetchResult);
+        List<URL> subPageUrls = hasDirective(robotsDirectives, "nofollow")
+                ? Collections.emptyList() : extractSubPageUrls(pageContent);
+        return new ParsedPage(page, Collections.emptyMap(), subPageUrls, true, false, false, null);
+    }
 
-        if (Thread.currentThread().isInterrupted()) {
-            logger.warn("Task interrupted after indexing lemmas: {}", pageUrlString);
-            return;
+    /**
+     * @return the URL from &lt;link rel="canonical"&gt; if it points to another page of the site
+     */
+    private URL canonicalUrlOf(PageContent pageContent) {
+        if (pageContent.getCanonicalUrl() == null) {
+            return null;
         }
+        URL canonicalUrl = urlCanonicalizer.canonicalize(pageContent.getCanonicalUrl());
+        return canonicalUrl == null || canonicalUrl.toString().equals(pageUrl.toString()) ? null : canonicalUrl;
+    }
 
-        for (Element subPage : subPages) {
-            String subPageUrlString = subPage.absUrl("href");
-//            logger.info("SubPageUrlString: {}", subPageUrlString);
-            if (!subPageUrlString.endsWith("/")) {
-                subPageUrlString += "/";
-            }
-            URL subPageUrl;
-            try {
-                subPageUrl = new URL(subPageUrlString);
-            } catch (MalformedURLException e) {
-                continue; // Skip this link if it is malformed
-            }
-            String subPageUrlPath = subPageUrl.getPath();
-            if (subPageUrlPath.equals("/") || subPageUrlPath.isEmpty()) { // skip the link if it's the homepage
-                continue;
-            }
-            int siteId = mainSite.getId();
-            mainSite.setId(siteId);
-
-            synchronized (pageCRUDService) {
-                existsInDB = pageCRUDService.existsByPathAndSite(subPageUrlPath, mainSite);
-            }
-            if (subPageUrlIsValid(mainSiteUrl, subPageUrlString) && !existsInDB) {
-                WebsiteScraperTask3 scraperTask = new WebsiteScraperTask3(subPageUrl, mainSite, siteCRUDService, pageCRUDService, indexingService);
-                scraperTask.fork();
-                taskList.add(scraperTask);
-            }
+    /**
+     * The page is a copy of another page of the site: it is not indexed, the canonical URL
+     * goes to the queue instead.
+     */
+    private ParsedPage duplicatePage(PageContent pageContent, FetchResult fetchResult, URL canonicalUrl) {
+        logger.debug("Page '{}' is a copy of '{}'", pageUrl, canonicalUrl);
+        List<URL> subPageUrls = new ArrayList<>();
+        if (!hasDirective(robotsDirectives(pageContent, fetchResult), "nofollow")) {
+            subPageUrls.addAll(extractSubPageUrls(pageContent));
         }
+        subPageUrls.add(canonicalUrl);
+        return new ParsedPage(newPage(fetchResult), Collections.emptyMap(), subPageUrls, false, true, true, null);
+    }
 
-        Instant end = Instant.now();
-        Duration executionTime = Duration.between(start, end);
-        logger.info("Task {} duration '{}'.", this, executionTime.toMillis());
-
-        for (WebsiteScraperTask3 task : taskList) {
-            task.join();
+    private Page newPage(FetchResult fetchResult) {
+        Page page = new Page();
+        if (knownPage != null) {
+            page.setId(knownPage.getId());
         }
+        page.setPath(pagePath);
+        page.setSite(mainSite);
+        page.setEtag(fetchResult.header("ETag"));
+        page.setLastModified(fetchResult.header("Last-Modified"));
+        return page;
     }
 
-    private synchronized boolean subPageUrlIsValid(String mainSiteUrl, String subLinkHref) {
-        if (subLinkHref.isEmpty()) {
-            return false;
+    private static String robotsDirectives(PageContent pageContent, FetchResult fetchResult) {
+        StringBuilder directives = new StringBuilder(pageContent.getRobotsDirectives());
+        String header = fetchResult.header("X-Robots-Tag");
+        if (header != null) {
+            directives.append(header);
         }
-        String[] parts = subLinkHref.split("/");
-        String lastPart = parts.length > 0 ? parts[parts.length - 1] : "";
-        String mainsSiteWithoutWWW = mainSiteUrl.replace("www.", "");
-
-        return (subLinkHref.startsWith(mainSiteUrl) || subLinkHref.startsWith(mainsSiteWithoutWWW))
-                && !(subLinkHref.contains("?") || subLinkHref.contains("tags") || subLinkHref.contains("tagged") || subLinkHref.contains("mailto:"))
-                && !subLinkHref.matches(".*\\.(jpg|png|pdf|css|js|ico|webp|zip)$")
-                && !lastPart.matches("\\d+")
-                && !lastPart.contains("#");
+        return directives.toString().toLowerCase(Locale.ROOT);
     }
 
-    private void handlePageError(String url, Exception e) throws SiteIndexationErrorException, UnableToConnectToSiteException {
-        if (isPageMainSite){ // if the url is the main site url
-            logger.info("LinkHref inside IOException catch is: {}", pageUrl);
-            throw new UnableToConnectToSiteException("Unable to connect to site '" + url + "' in WebsiteScraperTask", e);
-        } else {
-            pageErrorCount.incrementAndGet();
-            logger.warn("Page with url '{}' failed to add to DB. PageErrorCount: {}", url, pageErrorCount);
-        }
-        if (pageErrorCount.get() > PAGE_MARGIN_OF_ERROR) {
-            logger.error("Too many page errors: {}", pageErrorCount);
-            throw new TooManyPageErrorsException("Too many page errors: " + pageErrorCount, e);
-        }
+    private static boolean hasDirective(String directives, String directive) {
+        return directives.contains(directive) || directives.contains("none");
     }
 
-    private void handleIndexPageError(String url, Exception e) throws SiteIndexationErrorException, UnableToConnectToSiteException {
-        if (isPageMainSite){ // if the url is the main site url
-            throw new SiteIndexationErrorException("Site failed to index its homepage: " + url, e);
-        } else {
-            pageErrorCount.incrementAndGet();
-            logger.warn("Page with url '{}' failed to add to index. PageErrorCount: {}", url, pageErrorCount);
-        }
-        if (pageErrorCount.get() > PAGE_MARGIN_OF_ERROR) {
-            logger.error("Too many page errors: {}", pageErrorCount);
-            throw new TooManyPageErrorsException("Too many page errors: " + pageErrorCount, e);
+    private List<URL> extractSubPageUrls(PageContent pageContent) {
+        List<URL> subPageUrls = new ArrayList<>();
+        for (String link : pageContent.getLinks()) {
+            URL subPageUrl = urlCanonicalizer.canonicalize(link);
+            if (subPageUrl != null) {
+                subPageUrls.add(subPageUrl);
+            }
         }
+        return subPageUrls;
     }
 
-    public void resetPageErrorCount() {
-        pageErrorCount.set(0);
+    /**
+     * An error of the main page stops the site indexing if the request will not be retried.
+     * Errors of other pages are handled by {@link SiteCrawler}: it retries requests after transient
+     * errors, pauses an unavailable host and fails the site if there are too many errors.
+     */
+    private void handlePageError(String url, Exception e) throws UnableToConnectToSiteException {
+        if (isPageMainSite && !(retriesLeft && RetryPolicy.isTransient(statusCode))) { // if the url is the main site url
+            logger.info("LinkHref inside IOException catch is: {}", pageUrl);
+            throw new UnableToConnectToSiteException("Unable to connect to site '" + url + "' in WebsiteScraperTask", e);
+        }
+        logger.warn("Page with url '{}' failed to add to DB: {}", url, e.toString());
     }
 }
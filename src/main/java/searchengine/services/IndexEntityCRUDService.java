@@ -36,6 +36,11 @@ public class IndexEntityCRUDService implements CRUDService<IndexEntity> {
         }
     }
 
+    public void createAll(List<IndexEntity> indexList) {
+        indexEntityRepository.saveAll(indexList);
+        logger.debug("{} Indexes были созданы с помощью метода createAll", indexList.size());
+    }
+
     public void createOrUpdateByPageAndLemma(Page page, Lemma lemma, IndexEntity index) {
         if (existsByPageAndLemma(page, lemma)) {
             IndexEntity indexOldVersion = findByPageAndLemma(page, lemma);
@@ -95,6 +100,13 @@ public class IndexEntityCRUDService implements CRUDService<IndexEntity> {
         return foundLemmaHashSet;
     }
 
+    /**
+     * @return lemma ids of all given pages, one per page-lemma pair
+     */
+    public List<Integer> findLemmaIdsByPageIds(Collection<Integer> pageIds) {
+        return indexEntityRepository.findLemmaIdsByPageIds(pageIds);
+    }
+
     public IndexEntity findByPageAndLemma(Page page, Lemma lemma) {
         String pagePath = page.getPath();
         String pageSite = page.getSite().getUrl();
@@ -141,6 +153,11 @@ public class IndexEntityCRUDService implements CRUDService<IndexEntity> {
         }
     }
 
+    public void deleteByPageIds(Collection<Integer> pageIds) {
+        indexEntityRepository.deleteByPageIds(pageIds);
+        logger.debug("Индексы {} страниц были удалены с помощью метода deleteByPageIds.", pageIds.size());
+    }
+
     public void deleteByPageAndLemma(Page page, Lemma lemma) {
         if (existsByPageAndLemma(page, lemma)) {
             indexEntityRepository.deleteByPageAndLemma(page, lemma);
@@ -1,8 +1,6 @@
 package searchengine.services;
 
 import lombok.RequiredArgsConstructor;
-import org.apache.lucene.morphology.LuceneMorphology;
-import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -11,11 +9,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.CrawlerSettings;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
 import searchengine.exceptions.*;
 import searchengine.model.*;
-import searchengine.services.indexers.LemmaIndexerForWebsiteScraper;
+import searchengine.scrapers.CrawlerHttpClient;
+import searchengine.scrapers.PageFetcher;
 import searchengine.services.indexers.PageIndexer;
 import searchengine.services.indexers.SitesIndexer;
 import searchengine.util.FormatterUrl;
@@ -24,6 +26,7 @@ import searchengine.util.HtmlTextUtilities;
 import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.net.URL;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -38,10 +41,11 @@ public class IndexingService {
     private final PageCRUDService pageCRUDService;
     private final IndexEntityCRUDService indexEntityCRUDService;
     private final LemmaCRUDService lemmaCRUDService;
+    private final CrawlerSettings crawlerSettings;
+    private final CrawlerHttpClient httpClient;
 
     private SitesIndexer sitesIndexer;
 
-    private final LuceneMorphology morphology;
     private final LemmaFinder lemmaFinder;
 
     public boolean getIsRunning(){
@@ -51,24 +55,27 @@ public class IndexingService {
 
     @Autowired
     public IndexingService(SitesList sitesList, SiteCRUDService siteCRUDService, PageCRUDService pageCRUDService,
-                           IndexEntityCRUDService indexEntityCRUDService, LemmaCRUDService lemmaCRUDService) {
+                           IndexEntityCRUDService indexEntityCRUDService, LemmaCRUDService lemmaCRUDService,
+                           CrawlerSettings crawlerSettings, CrawlerHttpClient httpClient,
+                           MorphologyProvider morphologyProvider, PlatformTransactionManager transactionManager) {
         this.sitesList = sitesList;
         this.siteCRUDService = siteCRUDService;
         this.pageCRUDService = pageCRUDService;
         this.indexEntityCRUDService = indexEntityCRUDService;
         this.lemmaCRUDService = lemmaCRUDService;
-        try {
-            this.morphology = new RussianLuceneMorphology();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        this.lemmaFinder = new LemmaFinder(morphology);
+        this.crawlerSettings = crawlerSettings;
+        this.httpClient = httpClient;
+        this.lemmaFinder = morphologyProvider.getLemmaFinder();
 
         sitesIndexer = new SitesIndexer(
                 siteCRUDService,
                 pageCRUDService,
                 lemmaCRUDService,
-                indexEntityCRUDService
+                indexEntityCRUDService,
+                crawlerSettings,
+                httpClient,
+                lemmaFinder,
+                new TransactionTemplate(transactionManager)
         );
     }
 
@@ -82,28 +89,20 @@ public class IndexingService {
 
     public void indexPage(String url) throws IOException {
         PageIndexer pageIndexer = new PageIndexer(siteCRUDService, pageCRUDService, indexEntityCRUDService,
-                lemmaCRUDService, lemmaFinder, sitesList);
+                lemmaCRUDService, lemmaFinder, sitesList, new PageFetcher(httpClient, crawlerSettings.getMaxBodySize()));
         pageIndexer.indexPage(url);
     }
 
 
-    public void indexLemmasForWebsiteScraper(String html, Page pageWithId) {
-        LemmaIndexerForWebsiteScraper lemmaIndexerForWebsiteScraper = new LemmaIndexerForWebsiteScraper(lemmaCRUDService, indexEntityCRUDService);
-        lemmaIndexerForWebsiteScraper.indexLemmasForWebsiteScraper(html, pageWithId, lemmaFinder);
-    }
-
-
-
     public void stopIndexing() {
+        sitesIndexer.setHasStoppedByUser(true);
         try {
-            ForkJoinPool poolOfSitesIndexer = sitesIndexer.getPool();
-            poolOfSitesIndexer.shutdownNow();
+            sitesIndexer.stopCrawling();
             List<SiteEntity> runningSites = sitesIndexer.getRunningSitesList();
             runningSites.clear();
         } catch (Exception e) {
             throw new RuntimeException("Failed to stop the application", e);
         }
-        sitesIndexer.setHasStoppedByUser(true);
         sitesIndexer.setIndexSitesIsRunning(false);
     }
 
@@ -113,6 +112,7 @@ public class IndexingService {
         if (sitesIndexer.isComplete()) {
             return;
         }
+        sitesIndexer.shutdown(Duration.ofSeconds(10));
         List<SiteEntity> runningSites = sitesIndexer.getRunningSitesList();
         for (SiteEntity site : runningSites) {
             site.setStatus(Status.FAILED);
@@ -84,6 +84,11 @@ public class LemmaCRUDService implements CRUDService<Lemma> {
         long duration = Duration.between(beforeLemmaSaveAll, afterLemmaSaveAll).toMillis();
         logger.debug("Duration of lemma Save All: {}", duration);
     }
+    public void deleteAll(List<Lemma> lemmaList) {
+        lemmaRepository.deleteAllInBatch(lemmaList);
+        logger.debug("{} lemmas были удалены с помощью метода deleteAll.", lemmaList.size());
+    }
+
     @Override
     public Lemma getById(Integer id) {
         Lemma foundLemma = lemmaRepository.findById(id).orElseThrow(() -> new LemmaNotFoundException("Lemma с id " + id + " не найдена."));
@@ -1,28 +1,27 @@
 package searchengine.services;
 
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.lucene.morphology.LuceneMorphology;
-import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 import org.jsoup.Jsoup;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
 import java.util.*;
 
 @Slf4j
 public class LemmaFinder {
-    private final LuceneMorphology luceneMorphology;
-    private static final String WORD_TYPE_REGEX = "\\W\\w&&[^а-яА-Я\\s]";
-    private static final String[] particlesNames = new String[]{"МЕЖД", "ПРЕДЛ", "СОЮЗ"};
+    public static final int DEFAULT_WORD_FORM_CACHE_SIZE = 1 << 16;
 
-    public static LemmaFinder getInstance() throws IOException {
-        LuceneMorphology morphology= new RussianLuceneMorphology();
-        return new LemmaFinder(morphology);
-    }
+    @Getter
+    private final WordFormCache wordFormCache;
 
     public LemmaFinder(LuceneMorphology luceneMorphology) {
-        this.luceneMorphology = luceneMorphology;
+        this(new WordFormCache(luceneMorphology, DEFAULT_WORD_FORM_CACHE_SIZE));
+    }
+
+    public LemmaFinder(WordFormCache wordFormCache) {
+        this.wordFormCache = wordFormCache;
     }
 
     private LemmaFinder(){
@@ -36,33 +35,18 @@ public class LemmaFinder {
      * @return ключ является леммой, а значение количеством найденных лемм
      */
     public Map<String, Integer> collectLemmas(String text) {
-        String[] words = arrayContainsRussianWords(text);
-        HashMap<String, Integer> lemmas = new HashMap<>();
-
-        for (String word : words) {
-            if (word.isBlank()) {
-                continue;
-            }
-
-            List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-            if (anyWordBaseBelongToParticle(wordBaseForms)) {
-                continue;
-            }
-
-            List<String> normalForms = luceneMorphology.getNormalForms(word);
-            if (normalForms.isEmpty()) {
-                continue;
-            }
-
-            String normalWord = normalForms.get(0);
-
-            if (lemmas.containsKey(normalWord)) {
-                lemmas.put(normalWord, lemmas.get(normalWord) + 1);
-            } else {
-                lemmas.put(normalWord, 1);
+        // distinct word forms are counted first, then each of them is lemmatized once;
+        // the capacity is a rough guess, the table grows when a page has more distinct words
+        SurfaceFormCounter surfaceForms = new SurfaceFormCounter(text.length() / 64);
+        WordTokenizer.forEachWord(text, surfaceForms::add);
+        HashMap<String, Integer> lemmas = new HashMap<>(Math.max(16, surfaceForms.size() * 2));
+        surfaceForms.forEach((form, count) -> {
+            WordFormCache.WordForm wordForm = wordFormCache.get(form);
+            if (wordForm.isParticle() || wordForm.getNormalForms().isEmpty()) {
+                return;
             }
-        }
-
+            lemmas.merge(wordForm.getNormalForms().get(0), count, Integer::sum);
+        });
         return lemmas;
     }
 
@@ -72,48 +56,22 @@ public class LemmaFinder {
      * @return набор уникальных лемм найденных в тексте
      */
     public Set<String> getLemmaSet(String text) {
-        String[] textArray = arrayContainsRussianWords(text);
         Set<String> lemmaSet = new LinkedHashSet<>();
-        for (String word : textArray) {
-            if (!word.isEmpty() && isCorrectWordForm(word)) {
-                List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-                if (anyWordBaseBelongToParticle(wordBaseForms)) {
-                    continue;
-                }
-                lemmaSet.addAll(luceneMorphology.getNormalForms(word));
+        WordTokenizer.forEachWord(text, (buffer, length) -> {
+            WordFormCache.WordForm wordForm = wordFormCache.get(buffer, length);
+            if (wordForm.isCorrectForm() && !wordForm.isParticle()) {
+                lemmaSet.addAll(wordForm.getNormalForms());
             }
-        }
+        });
         return lemmaSet;
     }
 
-    private boolean anyWordBaseBelongToParticle(List<String> wordBaseForms) {
-        return wordBaseForms.stream().anyMatch(this::hasParticleProperty);
-    }
-
-    private boolean hasParticleProperty(String wordBase) {
-        for (String property : particlesNames) {
-            if (wordBase.toUpperCase().contains(property)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private String[] arrayContainsRussianWords(String text) {
-        return text.toLowerCase(Locale.ROOT)
-                .replaceAll("([^а-я\\s])", " ")
-                .trim()
-                .split("\\s+");
-    }
-
-    private boolean isCorrectWordForm(String word) {
-        List<String> wordInfo = luceneMorphology.getMorphInfo(word);
-        for (String morphInfo : wordInfo) {
-            if (morphInfo.matches(WORD_TYPE_REGEX)) {
-                return false;
-            }
-        }
-        return true;
+    /**
+     * @param word lower case word
+     * @return normal forms of the word; for a word missing from the dictionary - the dictionary exception, as in {@link LuceneMorphology}
+     */
+    public List<String> getNormalForms(String word) {
+        return wordFormCache.get(word).getNormalForms();
     }
 
     private String cleanHtmlCode(String html) {
@@ -0,0 +1,57 @@
+package searchengine.services;
+
+import lombok.Getter;
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import searchengine.config.MorphologySettings;
+
+import java.io.IOException;
+
+/**
+ * The morphology dictionaries, Russian and English, shared by the whole application, and the
+ * {@link LemmaFinder} over them with a shared {@link WordFormCache}.
+ * The dictionary is large, so it is loaded once on start rather than on every search, snippet
+ * or site indexing. After loading both objects are only read and can be used from any number
+ * of threads.
+ */
+@Getter
+@Component
+public class MorphologyProvider {
+    private static final Logger logger = LoggerFactory.getLogger(MorphologyProvider.class);
+    // touches nouns, verbs, adjectives and particles, so the first search does not pay for lazy paths
+    private static final String WARM_UP_TEXT = "Повторное появление леопарда в Осетии позволяет предположить, "
+            + "что леопард постоянно обитает в некоторых районах Северного Кавказа. Мы быстро нашли "
+            + "новые интересные страницы и прочитали их. "
+            + "The new running shoes are available in our online store.";
+
+    private final LuceneMorphology morphology;
+    private final LuceneMorphology englishMorphology;
+    private final LemmaFinder lemmaFinder;
+
+    public MorphologyProvider(MorphologySettings morphologySettings) {
+        long start = System.nanoTime();
+        try {
+            morphology = new RussianLuceneMorphology();
+            englishMorphology = new EnglishLuceneMorphology();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load the morphology dictionaries", e);
+        }
+        lemmaFinder = new LemmaFinder(new WordFormCache(morphology, englishMorphology,
+                morphologySettings.getWordFormCacheSize()));
+        logger.info("Morphology dictionaries loaded in {} ms", (System.nanoTime() - start) / 1_000_000);
+        if (morphologySettings.isWarmUp()) {
+            warmUp();
+        }
+    }
+
+    private void warmUp() {
+        long start = System.nanoTime();
+        lemmaFinder.collectLemmas(WARM_UP_TEXT);
+        lemmaFinder.getLemmaSet(WARM_UP_TEXT);
+        logger.info("Morphology warmed up in {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+}
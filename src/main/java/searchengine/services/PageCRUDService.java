@@ -6,6 +6,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import searchengine.dto.entities.IndexEntityDTO;
 import searchengine.dto.entities.PageDTO;
+import searchengine.dto.entities.PageValidatorsDTO;
 import searchengine.exceptions.PageAlreadyExistsException;
 import searchengine.exceptions.PageNotFoundException;
 import searchengine.model.Lemma;
@@ -54,6 +55,22 @@ public class PageCRUDService implements CRUDService<Page> {
         }
     }
 
+    public void createAll(List<Page> pageList) {
+        pageRepository.saveAll(pageList);
+        logger.debug("{} страниц были созданы с помощью метода createAll.", pageList.size());
+    }
+
+    public void updateValidators(Page page) {
+        pageRepository.updateValidators(page.getId(), page.getEtag(), page.getLastModified());
+        logger.debug("Валидаторы страницы c id '{}' были обновлены.", page.getId());
+    }
+
+    public List<PageValidatorsDTO> getValidatorsBySiteId(int siteId) {
+        List<PageValidatorsDTO> validators = pageRepository.findValidatorsBySiteId(siteId);
+        logger.debug("Валидаторы {} страниц сайта с id '{}' были извлечены из базы данных", validators.size(), siteId);
+        return validators;
+    }
+
     public void createTableFromPagesSet(Set<Page> pageList) {
         for (Page page : pageList) {
             create(page);
@@ -189,6 +206,11 @@ public class PageCRUDService implements CRUDService<Page> {
         }
     }
 
+    public void deleteAllByIds(List<Integer> pageIds) {
+        pageRepository.deleteAllByIdInBatch(pageIds);
+        logger.debug("{} страниц были удалены с помощью метода deleteAllByIds.", pageIds.size());
+    }
+
     public boolean existsById(Integer id) {
         return pageRepository.existsById(id);
     }
@@ -1,8 +1,6 @@
 package searchengine.services;
 
 import lombok.RequiredArgsConstructor;
-import org.apache.lucene.morphology.LuceneMorphology;
-import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -18,7 +16,6 @@ import searchengine.model.SiteEntity;
 import searchengine.util.SortMap;
 import searchengine.util.Verifier;
 
-import java.io.IOException;
 import java.util.*;
 
 @Service
@@ -26,7 +23,7 @@ import java.util.*;
 public class SearchService {
     private String query;
 
-    private  LuceneMorphology luceneMorphology;
+    private final MorphologyProvider morphologyProvider;
 
     private final LemmaCRUDService lemmaCRUDService;
 
@@ -57,10 +54,7 @@ public class SearchService {
         }
         boolean userSelectedAllSites = (site.getUrl() == null);
 
-        try {
-            luceneMorphology = new RussianLuceneMorphology();
-            LemmaFinder lemmaFinder = new LemmaFinder(luceneMorphology);
-            Set<String> queryLemmaSet = lemmaFinder.getLemmaSet(query);
+            Set<String> queryLemmaSet = morphologyProvider.getLemmaFinder().getLemmaSet(query);
 
             int i = 1;
 //            for (String lemmaString : queryLemmaSet) {
@@ -222,9 +216,6 @@ public class SearchService {
                 pageLemmaRankMap.put(page, relativeRank);
             }
 
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
 
         pageLemmaRankMap = SortMap.sortPageFloatLinkedHashMapByValueDesc(pageLemmaRankMap);
 //        logger.info("Time after completion searchService {} ", System.currentTimeMillis());
@@ -51,6 +51,21 @@ public class SiteCRUDService implements CRUDService<SiteEntity> {
         logger.debug("Все сайты из sitesList были созданы.");
     }
 
+    /**
+     * Creates only the sites from sitesList that are not in the database yet; already indexed
+     * sites stay together with their pages.
+     */
+    public void createMissingSitesWithIndexingStatus(SitesList sitesList) {
+        for (Site site : sitesList.getSites()) {
+            if (!siteExistsByNotFormattedUrl(site.getUrl())) {
+                SiteEntity siteEntity = mapSiteConfigToSiteEntity(site);
+                siteEntity.setStatus(Status.INDEXING);
+                create(siteEntity);
+            }
+        }
+        logger.debug("Недостающие сайты из sitesList были созданы.");
+    }
+
     @Override
     public SiteEntity getById(Integer id) {
         SiteEntity foundSite = siteRepository.findById(id).orElseThrow(() -> new SiteNotFoundException(id));
@@ -0,0 +1,116 @@
+package searchengine.services;
+
+/**
+ * Counts how many times every word form occurred in a text. An open-addressing hash table on
+ * arrays: the counters are primitive ints, and the string for a word form is created once, on
+ * the first occurrence, so repeated words allocate nothing.
+ */
+public class SurfaceFormCounter {
+    private static final int MIN_CAPACITY = 256;
+
+    private String[] forms;
+    private int[] hashes;
+    private int[] counts;
+    private int mask;
+    private int size = 0;
+
+    /**
+     * Receives a word form and the number of its occurrences.
+     */
+    @FunctionalInterface
+    public interface FormConsumer {
+        void accept(String form, int count);
+    }
+
+    /**
+     * @param expectedForms how many distinct word forms are expected; the table grows when needed
+     */
+    public SurfaceFormCounter(int expectedForms) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedForms * 2 && capacity < 1 << 30) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Counts the word form of the first length chars of the buffer.
+     */
+    public void add(char[] buffer, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        int slot = spread(hash) & mask;
+        while (forms[slot] != null) {
+            if (hashes[slot] == hash && equals(forms[slot], buffer, length)) {
+                counts[slot]++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        forms[slot] = new String(buffer, 0, length);
+        hashes[slot] = hash;
+        counts[slot] = 1;
+        if (++size * 2 > forms.length) {
+            grow();
+        }
+    }
+
+    /**
+     * @return how many distinct word forms occurred
+     */
+    public int size() {
+        return size;
+    }
+
+    public void forEach(FormConsumer consumer) {
+        for (int slot = 0; slot < forms.length; slot++) {
+            if (forms[slot] != null) {
+                consumer.accept(forms[slot], counts[slot]);
+            }
+        }
+    }
+
+    private void grow() {
+        String[] oldForms = forms;
+        int[] oldHashes = hashes;
+        int[] oldCounts = counts;
+        allocate(oldForms.length * 2);
+        for (int i = 0; i < oldForms.length; i++) {
+            if (oldForms[i] == null) {
+                continue;
+            }
+            int slot = spread(oldHashes[i]) & mask;
+            while (forms[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            forms[slot] = oldForms[i];
+            hashes[slot] = oldHashes[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        forms = new String[capacity];
+        hashes = new int[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private static boolean equals(String form, char[] buffer, int length) {
+        if (form.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (form.charAt(i) != buffer[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
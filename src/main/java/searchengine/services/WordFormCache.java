@@ -0,0 +1,171 @@
+package searchengine.services;
+
+import lombok.Getter;
+import org.apache.lucene.morphology.LuceneMorphology;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Word form cache in front of the {@link LuceneMorphology} dictionaries: Russian words are parsed
+ * by the Russian dictionary, Latin ones by the English one. For a word it keeps the normal forms
+ * and precomputed flags - whether it is a function part of speech and whether the form is correct.
+ * The same words repeat in a text all the time, so most words are taken from the cache without
+ * going to the dictionary.
+ *
+ * <p>A direct-mapped cache of fixed size: every word has one slot by its hash, and a new word
+ * evicts whatever was in it. Slots hold immutable entries, so the cache can be used from any
+ * number of threads without locks; a race on writing a slot costs only an extra dictionary lookup.
+ */
+public class WordFormCache {
+    private static final String WORD_TYPE_REGEX = "\\W\\w&&[^а-яА-Я\\s]";
+    private static final Set<String> particlesNames = Set.of("МЕЖД", "ПРЕДЛ", "СОЮЗ");
+    private static final Set<String> englishParticlesNames = Set.of("ARTICLE", "CONJ", "INT", "PART", "PREP");
+
+    private final LuceneMorphology luceneMorphology;
+    private final LuceneMorphology englishMorphology;
+    private final WordForm[] slots;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity how many word forms to keep, rounded up to a power of two; 0 - no caching
+     */
+    public WordFormCache(LuceneMorphology luceneMorphology, int capacity) {
+        this(luceneMorphology, null, capacity);
+    }
+
+    /**
+     * @param englishMorphology null - Latin words are not lemmatized
+     */
+    public WordFormCache(LuceneMorphology luceneMorphology, LuceneMorphology englishMorphology, int capacity) {
+        this.luceneMorphology = luceneMorphology;
+        this.englishMorphology = englishMorphology;
+        int size = capacity <= 0 ? 0 : 1;
+        while (size > 0 && size < capacity && size < 1 << 30) {
+            size <<= 1;
+        }
+        this.slots = new WordForm[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @param word lower case word of letters the dictionary knows
+     */
+    public WordForm get(String word) {
+        int slot = spread(word.hashCode()) & mask;
+        WordForm cached = slots.length == 0 ? null : slots[slot];
+        if (cached != null && cached.word.equals(word)) {
+            hits.increment();
+            return cached;
+        }
+        return miss(word, slot);
+    }
+
+    /**
+     * The same as {@link #get(String)} for the word of the first length chars of the buffer;
+     * a string for the word is created only if it is not in the cache.
+     */
+    public WordForm get(char[] buffer, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer[i]; // the same as String.hashCode
+        }
+        int slot = spread(hash) & mask;
+        WordForm cached = slots.length == 0 ? null : slots[slot];
+        if (cached != null && cached.matches(buffer, length)) {
+            hits.increment();
+            return cached;
+        }
+        return miss(new String(buffer, 0, length), slot);
+    }
+
+    /**
+     * @return share of words found in the cache since creation; 0 if there were no words yet
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private WordForm miss(String word, int slot) {
+        misses.increment();
+        WordForm wordForm = lookUp(word);
+        if (slots.length > 0) {
+            slots[slot] = wordForm;
+        }
+        return wordForm;
+    }
+
+    private WordForm lookUp(String word) {
+        boolean latin = !word.isEmpty() && WordTokenizer.isLatin(word.charAt(0));
+        LuceneMorphology morphology = latin ? englishMorphology : luceneMorphology;
+        if (morphology == null) {
+            return new WordForm(word, List.of(), false, false);
+        }
+        List<String> morphInfo = morphology.getMorphInfo(word);
+        boolean particle = false;
+        boolean correctForm = true;
+        for (String info : morphInfo) {
+            particle |= hasParticleProperty(info, latin ? englishParticlesNames : particlesNames);
+            correctForm &= !info.matches(WORD_TYPE_REGEX);
+        }
+        return new WordForm(word, List.copyOf(morphology.getNormalForms(word)), particle, correctForm);
+    }
+
+    /**
+     * @param wordBase word form description from the dictionary, "word|code PART_OF_SPEECH tags"
+     */
+    private static boolean hasParticleProperty(String wordBase, Set<String> properties) {
+        // only the grammar part: the word itself may contain a tag, as "союзник" contains "СОЮЗ"
+        String grammar = wordBase.substring(wordBase.indexOf('|') + 1).toUpperCase();
+        for (String property : grammar.split("[\\s,]+")) {
+            if (properties.contains(property)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    @Getter
+    public static class WordForm {
+        private final String word;
+        private final List<String> normalForms;
+        private final boolean particle;
+        private final boolean correctForm;
+
+        private WordForm(String word, List<String> normalForms, boolean particle, boolean correctForm) {
+            this.word = word;
+            this.normalForms = normalForms;
+            this.particle = particle;
+            this.correctForm = correctForm;
+        }
+
+        private boolean matches(char[] buffer, int length) {
+            if (word.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (word.charAt(i) != buffer[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
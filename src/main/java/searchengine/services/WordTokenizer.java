@@ -0,0 +1,85 @@
+package searchengine.services;
+
+/**
+ * Splits a text into words in one pass over its chars. A word is a continuous run of letters
+ * of one alphabet: Russian from "а" to "я" or Latin from "a" to "z", in any case.
+ * Everything else, digits and a change of alphabet included, separates words; numbers and words
+ * longer than {@value #MAX_WORD_LENGTH} letters are skipped before they reach the dictionary.
+ * Lower case letters of a word go to one buffer reused for all words of the text, so parsing
+ * creates neither copies of the text nor strings for the words.
+ */
+public class WordTokenizer {
+    // longer runs are glued words, identifiers or base64, not something a dictionary knows
+    public static final int MAX_WORD_LENGTH = 48;
+
+    private static final int NONE = 0;
+    private static final int CYRILLIC = 1;
+    private static final int LATIN = 2;
+
+    private WordTokenizer() {
+    }
+
+    /**
+     * Gets the next word. The buffer is valid only until the method returns.
+     */
+    @FunctionalInterface
+    public interface WordConsumer {
+        void accept(char[] buffer, int length);
+    }
+
+    public static void forEachWord(CharSequence text, WordConsumer consumer) {
+        char[] buffer = new char[MAX_WORD_LENGTH];
+        int length = 0;
+        int wordScript = NONE;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = toLowerCaseLetter(text.charAt(i));
+            int script = scriptOf(c);
+            if (script != wordScript) {
+                if (length > 0 && length <= MAX_WORD_LENGTH) {
+                    consumer.accept(buffer, length);
+                }
+                length = 0;
+                wordScript = script;
+            }
+            if (script != NONE) {
+                if (length < MAX_WORD_LENGTH) {
+                    buffer[length] = c;
+                }
+                length++;
+            }
+        }
+        if (length > 0 && length <= MAX_WORD_LENGTH) {
+            consumer.accept(buffer, length);
+        }
+    }
+
+    /**
+     * @return true if the word from the tokenizer is written in Latin letters
+     */
+    public static boolean isLatin(char firstLetter) {
+        return firstLetter >= 'a' && firstLetter <= 'z';
+    }
+
+    /**
+     * @return lower case letter or 0 if the char is neither a Russian nor a Latin letter
+     */
+    private static char toLowerCaseLetter(char c) {
+        if (c >= 'а' && c <= 'я' || c >= 'a' && c <= 'z') {
+            return c;
+        }
+        if (c >= 'А' && c <= 'Я') {
+            return (char) (c + ('а' - 'А'));
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        return 0;
+    }
+
+    private static int scriptOf(char letter) {
+        if (letter == 0) {
+            return NONE;
+        }
+        return isLatin(letter) ? LATIN : CYRILLIC;
+    }
+}
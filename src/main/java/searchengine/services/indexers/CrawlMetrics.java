@@ -0,0 +1,81 @@
+package searchengine.services.indexers;
+
+import searchengine.util.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of one indexing run: how many pages were processed, how many rows were written to
+ * the database and how long a page takes from leaving the crawl queue to being written.
+ * Updated without locks from all pipeline stages.
+ */
+public class CrawlMetrics {
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder pagesWritten = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LatencyHistogram pageLatency = new LatencyHistogram();
+    private volatile long startNanos = System.nanoTime();
+    private volatile long finishNanos = 0;
+
+    /**
+     * Resets the counters at the start of indexing.
+     */
+    public void start() {
+        pages.reset();
+        pagesWritten.reset();
+        rowsWritten.reset();
+        pageLatency.reset();
+        finishNanos = 0;
+        startNanos = System.nanoTime();
+    }
+
+    public void finish() {
+        finishNanos = System.nanoTime();
+    }
+
+    /**
+     * A page is processed: written to the database or dropped.
+     */
+    public void recordPage(long latencyNanos) {
+        pages.increment();
+        pageLatency.record(latencyNanos);
+    }
+
+    /**
+     * @param rows written and updated rows of pages, lemmas and indexes
+     */
+    public void recordWrite(int pageCount, int rows) {
+        pagesWritten.add(pageCount);
+        rowsWritten.add(rows);
+    }
+
+    public long getPages() {
+        return pages.sum();
+    }
+
+    public long getPagesWritten() {
+        return pagesWritten.sum();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    /**
+     * @return the indexing duration or, while it runs, the time since its start
+     */
+    public long getElapsedMillis() {
+        long end = finishNanos != 0 ? finishNanos : System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+    }
+
+    public double perSecond(long count) {
+        long elapsedMillis = getElapsedMillis();
+        return elapsedMillis == 0 ? 0 : count * 1000.0 / elapsedMillis;
+    }
+
+    public LatencyHistogram getPageLatency() {
+        return pageLatency;
+    }
+}
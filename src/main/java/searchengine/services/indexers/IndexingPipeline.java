@@ -0,0 +1,143 @@
+package searchengine.services.indexers;
+
+import org.springframework.transaction.support.TransactionOperations;
+import searchengine.config.CrawlerSettings;
+import searchengine.scrapers.CrawlerHttpClient;
+import searchengine.scrapers.HostCircuitBreaker;
+import searchengine.scrapers.HostScheduler;
+import searchengine.scrapers.PageFetcher;
+import searchengine.scrapers.RobotsTxtCache;
+import searchengine.services.IndexEntityCRUDService;
+import searchengine.services.LemmaCRUDService;
+import searchengine.services.PageCRUDService;
+import searchengine.services.SiteCRUDService;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexing pipeline of three stages with their own thread pools:
+ * download (I/O), parsing and lemmatization (CPU), batched database writes.
+ * The stages are connected by bounded queues. The pipeline is shared by all sites indexed
+ * at the same time and limits the total number of concurrent downloads.
+ * It also holds the per-host request schedule, the circuit breaker for unavailable hosts
+ * and the robots.txt cache shared by all sites.
+ */
+public class IndexingPipeline {
+    private final PipelineStage fetchStage;
+    private final PipelineStage parseStage;
+    // only puts requests back into their frontier when the delay is over, so one thread is enough
+    private final ScheduledExecutorService retryScheduler =
+            Executors.newSingleThreadScheduledExecutor(PipelineStage.namedThreadFactory("retry"));
+    private final PageBatchWriter pageWriter;
+    private final Semaphore fetchPermits;
+    private final HostScheduler hostScheduler;
+    private final HostCircuitBreaker hostCircuitBreaker;
+    private final RobotsTxtCache robotsTxtCache;
+    private final CrawlerHttpClient httpClient;
+    private final PageCRUDService pageCRUDService;
+    private final CrawlMetrics metrics;
+
+    public IndexingPipeline(CrawlerSettings crawlerSettings, CrawlerHttpClient httpClient,
+                            PageCRUDService pageCRUDService, LemmaCRUDService lemmaCRUDService,
+                            IndexEntityCRUDService indexEntityCRUDService, SiteCRUDService siteCRUDService,
+                            CrawlMetrics metrics, TransactionOperations transactions) {
+        this.httpClient = httpClient;
+        this.metrics = metrics;
+        this.pageCRUDService = pageCRUDService;
+        this.fetchPermits = new Semaphore(Math.max(1, crawlerSettings.getGlobalConcurrency()));
+        this.hostScheduler = new HostScheduler(crawlerSettings.getHostMinDelayMillis(),
+                crawlerSettings.getHostMaxDelayMillis(), crawlerSettings.getHostBurst());
+        this.hostCircuitBreaker = new HostCircuitBreaker(crawlerSettings.getHostErrorWindowSeconds(),
+                crawlerSettings.getHostErrorMinRequests(), crawlerSettings.getHostMaxErrorRate(),
+                crawlerSettings.getHostPauseSeconds(), crawlerSettings.getHostMaxPauseSeconds());
+        this.robotsTxtCache = new RobotsTxtCache(new PageFetcher(httpClient, crawlerSettings.getMaxBodySize(),
+                hostScheduler));
+        int queueCapacity = crawlerSettings.getStageQueueCapacity();
+        this.fetchStage = new PipelineStage("fetch", crawlerSettings.getFetchThreads(), queueCapacity);
+        this.parseStage = new PipelineStage("parse", crawlerSettings.getParseThreads(), queueCapacity);
+        this.pageWriter = new PageBatchWriter(pageCRUDService, lemmaCRUDService, indexEntityCRUDService,
+                siteCRUDService, crawlerSettings.getWriterThreads(), queueCapacity, crawlerSettings.getWriteBatchSize(),
+                metrics, transactions);
+    }
+
+    /**
+     * Takes one of the globalConcurrency slots to download a page; waits if all are taken.
+     */
+    public void acquireFetchPermit() throws InterruptedException {
+        fetchPermits.acquire();
+    }
+
+    public void releaseFetchPermit() {
+        fetchPermits.release();
+    }
+
+    public void fetch(Runnable task) {
+        fetchStage.submit(task);
+    }
+
+    public void parse(Runnable task) {
+        parseStage.submit(task);
+    }
+
+    /**
+     * Runs the task after delayMillis without holding a stage thread while waiting.
+     */
+    public void schedule(Runnable task, long delayMillis) {
+        retryScheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void persist(PageWriteRequest request) throws InterruptedException {
+        pageWriter.submit(request);
+    }
+
+    /**
+     * Content of the saved page - needed to find the links on a page that has not changed (304).
+     */
+    public String loadStoredContent(int pageId) {
+        return pageCRUDService.getById(pageId).getContent();
+    }
+
+    public CrawlerHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public HostScheduler getHostScheduler() {
+        return hostScheduler;
+    }
+
+    public HostCircuitBreaker getHostCircuitBreaker() {
+        return hostCircuitBreaker;
+    }
+
+    public RobotsTxtCache getRobotsTxtCache() {
+        return robotsTxtCache;
+    }
+
+    public CrawlMetrics getMetrics() {
+        return metrics;
+    }
+
+    public PageBatchWriter getPageWriter() {
+        return pageWriter;
+    }
+
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> queueDepths = new LinkedHashMap<>();
+        queueDepths.put(fetchStage.getName(), fetchStage.getQueueDepth());
+        queueDepths.put(parseStage.getName(), parseStage.getQueueDepth());
+        queueDepths.put("write", pageWriter.getQueueDepth());
+        return queueDepths;
+    }
+
+    public void shutdownNow() {
+        fetchStage.shutdownNow();
+        parseStage.shutdownNow();
+        retryScheduler.shutdownNow();
+        pageWriter.shutdownNow();
+    }
+}
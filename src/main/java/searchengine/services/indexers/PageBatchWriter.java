@@ -0,0 +1,333 @@
+package searchengine.services.indexers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionOperations;
+import searchengine.exceptions.SiteIndexationErrorException;
+import searchengine.model.IndexEntity;
+import searchengine.model.Lemma;
+import searchengine.model.Page;
+import searchengine.model.SiteEntity;
+import searchengine.services.IndexEntityCRUDService;
+import searchengine.services.LemmaCRUDService;
+import searchengine.services.PageCRUDService;
+import searchengine.services.SiteCRUDService;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The last pipeline stage: writes pages, lemmas and indexes to the database in batches.
+ * Lemmas of every site are cached in memory, so a known lemma needs no database query,
+ * and the lemma frequency is counted right when pages are written. On reindexing the
+ * cache is filled with lemmas from the database, and frequencies are corrected only for
+ * changed, new and vanished pages.
+ *
+ * <p>A batch of pages of one site is written in one transaction. If the write failed, the
+ * transaction is rolled back, the lemma cache of the site, which no longer matches the database,
+ * is dropped, and the pages of the batch and all following pages of that site are returned to
+ * the crawler with an error instead of being written.
+ */
+public class PageBatchWriter {
+    private static final Logger logger = LoggerFactory.getLogger(PageBatchWriter.class);
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+    private static final int DELETE_CHUNK_SIZE = 1000;
+
+    private final PageCRUDService pageCRUDService;
+    private final LemmaCRUDService lemmaCRUDService;
+    private final IndexEntityCRUDService indexEntityCRUDService;
+    private final SiteCRUDService siteCRUDService;
+    private final BlockingQueue<PageWriteRequest> queue;
+    private final ExecutorService writers;
+    private final int batchSize;
+    private final CrawlMetrics metrics;
+    private final TransactionOperations transactions;
+    private final Map<Integer, SiteLemmas> lemmasBySite = new ConcurrentHashMap<>();
+    private final Map<Integer, RuntimeException> failedSites = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    public PageBatchWriter(PageCRUDService pageCRUDService, LemmaCRUDService lemmaCRUDService,
+                           IndexEntityCRUDService indexEntityCRUDService, SiteCRUDService siteCRUDService,
+                           int writerThreads, int queueCapacity, int batchSize, CrawlMetrics metrics,
+                           TransactionOperations transactions) {
+        this.pageCRUDService = pageCRUDService;
+        this.lemmaCRUDService = lemmaCRUDService;
+        this.indexEntityCRUDService = indexEntityCRUDService;
+        this.siteCRUDService = siteCRUDService;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.metrics = metrics;
+        this.transactions = transactions;
+        this.writers = Executors.newFixedThreadPool(writerThreads, PipelineStage.namedThreadFactory("page-writer"));
+        for (int i = 0; i < writerThreads; i++) {
+            writers.execute(this::runWriter);
+        }
+    }
+
+    /**
+     * Queues a page for writing; waits if the queue is full.
+     */
+    public void submit(PageWriteRequest request) throws InterruptedException {
+        queue.put(request);
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Loads the already saved lemmas of the site into the cache. Called before the site crawl.
+     */
+    public void loadSite(SiteEntity site) {
+        SiteLemmas siteLemmas = new SiteLemmas();
+        for (Lemma lemma : lemmaCRUDService.getLemmasBySiteId(site.getId())) {
+            lemma.setSite(site);
+            siteLemmas.put(lemma);
+        }
+        lemmasBySite.put(site.getId(), siteLemmas);
+        failedSites.remove(site.getId());
+        logger.info("{} lemmas of site '{}' have been loaded", siteLemmas.size(), site.getUrl());
+    }
+
+    /**
+     * Deletes pages that are no longer on the site together with their indexes and decreases
+     * the frequencies of their lemmas. Called after the crawl, when all pages of the site are written.
+     */
+    public void removePages(SiteEntity site, List<Integer> pageIds) {
+        SiteLemmas siteLemmas = lemmasOf(site);
+        synchronized (siteLemmas) {
+            for (int from = 0; from < pageIds.size(); from += DELETE_CHUNK_SIZE) {
+                List<Integer> chunk = pageIds.subList(from, Math.min(pageIds.size(), from + DELETE_CHUNK_SIZE));
+                inTransaction(site, chunk.size(), () -> {
+                    Map<String, Lemma> touchedLemmas = new LinkedHashMap<>();
+                    detachStoredPages(siteLemmas, chunk, touchedLemmas);
+                    pageCRUDService.deleteAllByIds(chunk);
+                    saveTouchedLemmas(siteLemmas, touchedLemmas);
+                });
+            }
+        }
+        logger.info("{} pages that disappeared from site '{}' have been removed", pageIds.size(), site.getUrl());
+    }
+
+    /**
+     * Drops the lemma cache of the site once its crawl is over.
+     */
+    public void forgetSite(SiteEntity site) {
+        lemmasBySite.remove(site.getId());
+        failedSites.remove(site.getId());
+    }
+
+    public void shutdownNow() {
+        running = false;
+        writers.shutdownNow();
+    }
+
+    private void runWriter() {
+        List<PageWriteRequest> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                PageWriteRequest first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<PageWriteRequest> batch) {
+        Map<Integer, List<PageWriteRequest>> requestsBySite = new LinkedHashMap<>();
+        for (PageWriteRequest request : batch) {
+            requestsBySite.computeIfAbsent(request.getPage().getSite().getId(), id -> new ArrayList<>()).add(request);
+        }
+        for (List<PageWriteRequest> siteRequests : requestsBySite.values()) {
+            RuntimeException error = null;
+            try {
+                writeSiteBatch(siteRequests);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            for (PageWriteRequest request : siteRequests) {
+                request.getOnWritten().onWritten(error);
+            }
+        }
+    }
+
+    private void writeSiteBatch(List<PageWriteRequest> requests) {
+        SiteEntity site = requests.get(0).getPage().getSite();
+        RuntimeException earlierFailure = failedSites.get(site.getId());
+        if (earlierFailure != null) {
+            throw earlierFailure;
+        }
+        SiteLemmas siteLemmas = lemmasOf(site);
+        // lemma frequencies of one site are updated by one writer at a time, until the transaction is over
+        synchronized (siteLemmas) {
+            inTransaction(site, requests.size(), () -> writeSiteBatch(site, siteLemmas, requests));
+        }
+        logger.debug("{} pages of site '{}' have been written to DB", requests.size(), site.getUrl());
+    }
+
+    private void writeSiteBatch(SiteEntity site, SiteLemmas siteLemmas, List<PageWriteRequest> requests) {
+        List<PageWriteRequest> contentRequests = new ArrayList<>(requests.size());
+        for (PageWriteRequest request : requests) {
+            if (request.isValidatorsOnly()) {
+                pageCRUDService.updateValidators(request.getPage());
+                metrics.recordWrite(0, 1);
+            } else {
+                contentRequests.add(request);
+            }
+        }
+        if (!contentRequests.isEmpty()) {
+            writeContent(site, siteLemmas, contentRequests);
+        }
+        site.setStatusTime(LocalDateTime.now());
+        siteCRUDService.updateById(site);
+    }
+
+    private void writeContent(SiteEntity site, SiteLemmas siteLemmas, List<PageWriteRequest> contentRequests) {
+        List<Page> pages = new ArrayList<>(contentRequests.size());
+        List<Integer> replacedPageIds = new ArrayList<>();
+        for (PageWriteRequest request : contentRequests) {
+            pages.add(request.getPage());
+            if (request.replacesStoredPage()) {
+                replacedPageIds.add(request.getPage().getId());
+            }
+        }
+
+        Map<String, Lemma> touchedLemmas = new LinkedHashMap<>();
+        if (!replacedPageIds.isEmpty()) {
+            detachStoredPages(siteLemmas, replacedPageIds, touchedLemmas);
+        }
+        pageCRUDService.createAll(pages);
+
+        List<IndexEntity> indexes = new ArrayList<>();
+        for (PageWriteRequest request : contentRequests) {
+            for (Map.Entry<String, Integer> entry : request.getLemmas().entrySet()) {
+                Lemma lemma = siteLemmas.getOrCreate(entry.getKey(), site);
+                lemma.setFrequency(lemma.getFrequency() + 1);
+                touchedLemmas.put(entry.getKey(), lemma);
+                indexes.add(newIndex(request.getPage(), lemma, entry.getValue()));
+            }
+        }
+        saveTouchedLemmas(siteLemmas, touchedLemmas);
+        indexEntityCRUDService.createAll(indexes);
+        metrics.recordWrite(pages.size(), pages.size() + touchedLemmas.size() + indexes.size());
+    }
+
+    private SiteLemmas lemmasOf(SiteEntity site) {
+        return lemmasBySite.computeIfAbsent(site.getId(), id -> new SiteLemmas());
+    }
+
+    /**
+     * Runs the write in one transaction. If it failed, the site is marked as failed: its lemma
+     * cache is dropped, and this and all following writes of the site complete with an error.
+     */
+    private void inTransaction(SiteEntity site, int pageCount, Runnable write) {
+        try {
+            transactions.executeWithoutResult(status -> write.run());
+        } catch (RuntimeException e) {
+            SiteIndexationErrorException failure = new SiteIndexationErrorException("Failed to write " + pageCount
+                    + " pages of site '" + site.getUrl() + "' to DB: " + e.getMessage(), e);
+            if (failedSites.putIfAbsent(site.getId(), failure) == null) {
+                logger.error("Failed to write {} pages of site '{}', its lemma cache is dropped",
+                        pageCount, site.getUrl(), e);
+            }
+            // the cached frequencies were changed by the rolled back transaction, the next crawl reloads them
+            lemmasBySite.remove(site.getId());
+            throw failure;
+        }
+    }
+
+    /**
+     * Deletes the indexes of saved pages and decreases the frequencies of their lemmas in the cache.
+     */
+    private void detachStoredPages(SiteLemmas siteLemmas, List<Integer> pageIds, Map<String, Lemma> touchedLemmas) {
+        for (Integer lemmaId : indexEntityCRUDService.findLemmaIdsByPageIds(pageIds)) {
+            Lemma lemma = siteLemmas.getById(lemmaId);
+            if (lemma != null) {
+                lemma.setFrequency(Math.max(0, lemma.getFrequency() - 1));
+                touchedLemmas.put(lemma.getLemma(), lemma);
+            }
+        }
+        indexEntityCRUDService.deleteByPageIds(pageIds);
+    }
+
+    private void saveTouchedLemmas(SiteLemmas siteLemmas, Map<String, Lemma> touchedLemmas) {
+        List<Lemma> lemmasToSave = new ArrayList<>();
+        List<Lemma> lemmasToDelete = new ArrayList<>();
+        for (Lemma lemma : touchedLemmas.values()) {
+            if (lemma.getFrequency() > 0) {
+                lemmasToSave.add(lemma);
+            } else {
+                siteLemmas.remove(lemma);
+                if (lemma.getId() != 0) {
+                    lemmasToDelete.add(lemma);
+                }
+            }
+        }
+        lemmaCRUDService.createLemmasFromList(lemmasToSave);
+        siteLemmas.indexIds(lemmasToSave);
+        if (!lemmasToDelete.isEmpty()) {
+            lemmaCRUDService.deleteAll(lemmasToDelete);
+        }
+    }
+
+    private static Lemma newLemma(String text, SiteEntity site) {
+        Lemma lemma = new Lemma();
+        lemma.setLemma(text);
+        lemma.setSite(site);
+        lemma.setFrequency(0);
+        return lemma;
+    }
+
+    private static IndexEntity newIndex(Page page, Lemma lemma, int rank) {
+        IndexEntity index = new IndexEntity();
+        index.setPage(page);
+        index.setLemma(lemma);
+        index.setRank((float) rank);
+        return index;
+    }
+
+    /**
+     * Lemmas of one site by text and by id.
+     */
+    private static class SiteLemmas {
+        private final Map<String, Lemma> byText = new HashMap<>();
+        private final Map<Integer, Lemma> byId = new HashMap<>();
+
+        private Lemma getOrCreate(String text, SiteEntity site) {
+            return byText.computeIfAbsent(text, key -> newLemma(key, site));
+        }
+
+        private Lemma getById(int id) {
+            return byId.get(id);
+        }
+
+        private void put(Lemma lemma) {
+            byText.put(lemma.getLemma(), lemma);
+            byId.put(lemma.getId(), lemma);
+        }
+
+        private void indexIds(List<Lemma> savedLemmas) {
+            for (Lemma lemma : savedLemmas) {
+                byId.put(lemma.getId(), lemma);
+            }
+        }
+
+        private void remove(Lemma lemma) {
+            byText.remove(lemma.getLemma());
+            byId.remove(lemma.getId());
+        }
+
+        private int size() {
+            return byText.size();
+        }
+    }
+}
@@ -1,8 +1,5 @@
 package searchengine.services.indexers;
 
-import org.jsoup.Connection;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import searchengine.config.Site;
@@ -11,11 +8,18 @@ import searchengine.exceptions.LemmaNotFoundException;
 import searchengine.model.Lemma;
 import searchengine.model.Page;
 import searchengine.model.SiteEntity;
+import searchengine.scrapers.FetchResult;
+import searchengine.scrapers.PageContent;
+import searchengine.scrapers.PageFetcher;
+import searchengine.scrapers.PageStreamReader;
+import searchengine.scrapers.UrlCanonicalizer;
+import searchengine.scrapers.WebsiteScraperTask3;
 import searchengine.services.*;
+import searchengine.util.ContentHash;
 import searchengine.util.FormatterUrl;
-import searchengine.util.HtmlTextUtilities;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashSet;
 import java.util.Map;
@@ -28,42 +32,52 @@ public class PageIndexer {
     private final LemmaCRUDService lemmaCRUDService;
     private final LemmaFinder lemmaFinder;
     private final SitesList sitesList;
+    private final PageFetcher pageFetcher;
 
     public PageIndexer(SiteCRUDService siteCRUDService, PageCRUDService pageCRUDService,
                        IndexEntityCRUDService indexEntityCRUDService, LemmaCRUDService lemmaCRUDService,
-                       LemmaFinder lemmaFinder, SitesList sitesList) {
+                       LemmaFinder lemmaFinder, SitesList sitesList, PageFetcher pageFetcher) {
         this.siteCRUDService = siteCRUDService;
         this.pageCRUDService = pageCRUDService;
         this.indexEntityCRUDService = indexEntityCRUDService;
         this.lemmaCRUDService = lemmaCRUDService;
         this.lemmaFinder = lemmaFinder;
         this.sitesList = sitesList;
+        this.pageFetcher = pageFetcher;
     }
 
     public void indexPage(String url) throws IOException {
         logger.info("Url from indexPage Indexing service method: {}", url);
         String formattedUrl = FormatterUrl.verifyAndFormatUrl(url);
-        URL urlFormat = new URL(formattedUrl);
+        for (Site site : sitesList.getSites()) {
+            URL pageUrl = canonicalPageUrl(formattedUrl, site);
+            if (pageUrl != null) {
+                indexPage(pageUrl, siteCRUDService.getSiteFromSiteConfigOrCreate(site));
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Page is outside configured sites");
+    }
 
-        String path = urlFormat.getPath();
-        String pageSiteURL = "https://" + urlFormat.getHost() + "/";
+    private void indexPage(URL pageUrl, SiteEntity siteEntity) throws IOException {
+        String formattedUrl = pageUrl.toString();
+        String path = WebsiteScraperTask3.pagePathOf(pageUrl, siteEntity.getUrl());
 
-        Connection connection = Jsoup.connect(formattedUrl);
-        Document doc = fetchDocument(connection);
-        int httpCode = fetchStatusCode(connection);
+        FetchResult fetchResult = pageFetcher.fetch(formattedUrl);
+        String html = fetchResult.html(); // throws for http errors, non-html and oversized pages
+        PageContent pageContent = PageStreamReader.read(html, formattedUrl, true);
 
-        SiteEntity siteEntity = findSiteEntity(pageSiteURL);
         boolean pageAlreadyExisted = pageCRUDService.existsByPathAndSite(path, siteEntity);
         if (pageAlreadyExisted) {
             Page oldPage = pageCRUDService.getByPathAndSite(path, siteEntity);
             HashSet<Lemma> lemmasOfOldPage = indexEntityCRUDService.findLemmasByPage(oldPage);
             pageCRUDService.deleteAndDecreaseFrequencyLema(oldPage, lemmasOfOldPage);
         }
-        Page page = createOrUpdatePage(path, doc.html(), httpCode, siteEntity);
+        Page page = createOrUpdatePage(path, html, fetchResult, siteEntity);
 
         Page pageWithId = pageCRUDService.getByPathAndSite(path, siteEntity);
         try {
-            indexLemmasForSinglePage(doc.html(), pageWithId);
+            indexLemmasForSinglePage(pageContent.getText(), pageWithId);
         } catch (Exception e) {
             handleIndexLemmaForSinglePageError(e, formattedUrl, pageWithId);
             throw e;
@@ -72,32 +86,27 @@ public class PageIndexer {
         logPageAction(pageAlreadyExisted, formattedUrl);
     }
 
-    private Document fetchDocument(Connection connection) throws IOException {
-        return connection
-                .userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6")
-                .referrer("http://www.google.com")
-                .get();
-    }
-
-    private int fetchStatusCode(Connection connection) throws IOException {
-        return connection.execute().statusCode();
-    }
-
-    private SiteEntity findSiteEntity(String pageSiteURL) {
-        for (Site site : sitesList.getSites()) {
-            String configURL = site.getUrl();
-            if (pageSiteURL.equals(configURL) || configURL.equals("https://" + pageSiteURL)
-                    || configURL.equals("http://" + pageSiteURL)) {
-                return siteCRUDService.getSiteFromSiteConfigOrCreate(site);
-            }
+    /**
+     * Brings the url to the form the crawler stores it in, so that the page is not written
+     * to the DB a second time under another path.
+     *
+     * @return the canonical url or null if the page does not belong to the site
+     */
+    private URL canonicalPageUrl(String url, Site site) throws MalformedURLException {
+        UrlCanonicalizer urlCanonicalizer = new UrlCanonicalizer(site.getUrl(), false);
+        if (urlCanonicalizer.isMainPage(url)) {
+            return new URL(site.getUrl()); // the crawler starts from the configured url as it is
         }
-        throw new IllegalArgumentException("Page is outside configured sites");
+        return urlCanonicalizer.normalize(url); // the page was asked for explicitly, the crawler's filters do not apply
     }
 
-    private Page createOrUpdatePage(String path, String html, int httpCode, SiteEntity siteEntity) {
+    private Page createOrUpdatePage(String path, String html, FetchResult fetchResult, SiteEntity siteEntity) {
         Page page = new Page();
         page.setContent(html);
-        page.setCode(httpCode);
+        page.setCode(fetchResult.getStatusCode());
+        page.setEtag(fetchResult.header("ETag"));
+        page.setLastModified(fetchResult.header("Last-Modified"));
+        page.setContentHash(ContentHash.of(fetchResult.getBody()));
         page.setPath(path);
         page.setSite(siteEntity);
 
@@ -115,8 +124,7 @@ public class PageIndexer {
         }
     }
 
-    public void indexLemmasForSinglePage(String html, Page pageWithId) {
-        String cleanedText = HtmlTextUtilities.cleanHtml(html);
+    public void indexLemmasForSinglePage(String cleanedText, Page pageWithId) {
         Map<String, Integer> lemmas = lemmaFinder.collectLemmas(cleanedText);
         processLemmasForSinglePage(lemmas, pageWithId);
         logger.info("Леммы со страницы '{}' были проиндексированы.", pageWithId.getSite().getUrl() + pageWithId.getPath());
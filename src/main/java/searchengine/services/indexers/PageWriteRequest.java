@@ -0,0 +1,49 @@
+package searchengine.services.indexers;
+
+import lombok.Getter;
+import searchengine.model.Page;
+
+import java.util.Map;
+
+/**
+ * A page to write to the database. If the page already has an id, it replaces the saved
+ * version: the old indexes are deleted and the lemma frequencies are recounted. A
+ * {@link #validatorsOnly} request updates only the ETag and Last-Modified of an unchanged page.
+ */
+@Getter
+public class PageWriteRequest {
+    private final Page page;
+    private final Map<String, Integer> lemmas;
+    private final WriteCallback onWritten;
+    private final boolean validatorsOnly;
+
+    public PageWriteRequest(Page page, Map<String, Integer> lemmas, WriteCallback onWritten) {
+        this(page, lemmas, onWritten, false);
+    }
+
+    private PageWriteRequest(Page page, Map<String, Integer> lemmas, WriteCallback onWritten, boolean validatorsOnly) {
+        this.page = page;
+        this.lemmas = lemmas;
+        this.onWritten = onWritten;
+        this.validatorsOnly = validatorsOnly;
+    }
+
+    public static PageWriteRequest validatorsOnly(Page page, WriteCallback onWritten) {
+        return new PageWriteRequest(page, Map.of(), onWritten, true);
+    }
+
+    /**
+     * Called when the write is finished.
+     */
+    @FunctionalInterface
+    public interface WriteCallback {
+        /**
+         * @param error null - the page is written, otherwise - why it was not
+         */
+        void onWritten(RuntimeException error);
+    }
+
+    public boolean replacesStoredPage() {
+        return page.getId() != 0;
+    }
+}
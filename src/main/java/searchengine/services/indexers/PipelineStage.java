@@ -0,0 +1,65 @@
+package searchengine.services.indexers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One stage of the indexing pipeline: its own thread pool and a bounded task queue.
+ * If the queue is full, the submitting thread waits until there is room in it,
+ * so a fast stage cannot flood a slow one with tasks.
+ */
+public class PipelineStage {
+    private final String name;
+    private final ThreadPoolExecutor executor;
+
+    public PipelineStage(String name, int threads, int queueCapacity) {
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), namedThreadFactory(name), PipelineStage::waitForSpace);
+    }
+
+    public void submit(Runnable task) {
+        executor.execute(task);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public void shutdownNow() {
+        executor.shutdownNow();
+    }
+
+    private static void waitForSpace(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Stage has been shut down");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for stage queue", e);
+        }
+    }
+
+    static ThreadFactory namedThreadFactory(String name) {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
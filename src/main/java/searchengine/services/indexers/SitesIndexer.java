@@ -2,13 +2,16 @@ package searchengine.services.indexers;
 
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Async;
+import org.springframework.transaction.support.TransactionOperations;
+import searchengine.config.CrawlerSettings;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
 import searchengine.exceptions.*;
-import searchengine.model.Lemma;
 import searchengine.model.SiteEntity;
 import searchengine.model.Status;
-import searchengine.scrapers.WebsiteScraperTask3;
+import searchengine.scrapers.CrawlBudget;
+import searchengine.scrapers.CrawlerHttpClient;
+import searchengine.scrapers.SiteCrawler;
 import searchengine.services.*;
 
 import java.net.MalformedURLException;
@@ -19,9 +22,9 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.RejectedExecutionException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
 
 public class SitesIndexer {
 
@@ -29,10 +32,15 @@ public class SitesIndexer {
     private final PageCRUDService pageCRUDService;
     private final LemmaCRUDService lemmaCRUDService;
     private final IndexEntityCRUDService indexEntityCRUDService;
-    private final List<SiteEntity> runningSitesList = new ArrayList<>();
-    private final List<SiteEntity> indexedSites = new ArrayList<>();
-    private ForkJoinPool pool;
-    private boolean hasStoppedByUser = false;
+    private final CrawlerSettings crawlerSettings;
+    private final CrawlerHttpClient httpClient;
+    private final LemmaFinder lemmaFinder;
+    private final TransactionOperations transactions;
+    private final List<SiteEntity> runningSitesList = new CopyOnWriteArrayList<>();
+    private final List<SiteEntity> indexedSites = new CopyOnWriteArrayList<>();
+    private final Set<SiteCrawler> activeCrawlers = ConcurrentHashMap.newKeySet();
+    private final CrawlMetrics metrics = new CrawlMetrics();
+    private volatile boolean hasStoppedByUser = false;
     private boolean indexSitesIsRunning = false;
     private boolean isComplete = false;
     private final org.slf4j.Logger logger = LoggerFactory.getLogger(SitesIndexer.class);
@@ -42,41 +50,78 @@ public class SitesIndexer {
             SiteCRUDService siteCRUDService,
             PageCRUDService pageCRUDService,
             LemmaCRUDService lemmaCRUDService,
-            IndexEntityCRUDService indexEntityCRUDService
+            IndexEntityCRUDService indexEntityCRUDService,
+            CrawlerSettings crawlerSettings,
+            CrawlerHttpClient httpClient,
+            LemmaFinder lemmaFinder,
+            TransactionOperations transactions
     ) {
         this.siteCRUDService = siteCRUDService;
         this.pageCRUDService = pageCRUDService;
         this.lemmaCRUDService = lemmaCRUDService;
         this.indexEntityCRUDService = indexEntityCRUDService;
+        this.crawlerSettings = crawlerSettings;
+        this.httpClient = httpClient;
+        this.lemmaFinder = lemmaFinder;
+        this.transactions = transactions;
     }
 
     @Async
     public void indexSites(SitesList sitesList) throws Exception{
         indexSitesIsRunning = true;
         initializeIndexing(sitesList);
-        List<WebsiteScraperTask3> tasks = createScraperTasks(sitesList);
-        processScraperTasks(tasks);
+        IndexingPipeline pipeline = new IndexingPipeline(crawlerSettings, httpClient, pageCRUDService, lemmaCRUDService,
+                indexEntityCRUDService, siteCRUDService, metrics, transactions);
+        try {
+            List<SiteCrawler> crawlers = createSiteCrawlers(sitesList, pipeline);
+            processSiteCrawlers(crawlers);
+        } finally {
+            pipeline.shutdownNow();
+            metrics.finish();
+            logMetrics();
+        }
         finalizeIndexing();
     }
 
+    private void logMetrics() {
+        logger.info("Indexing took {} s: {} pages ({} pages/s), {} DB rows ({} rows/s), page latency p50 {} ms, p99 {} ms, "
+                        + "word form cache hit rate {}%",
+                metrics.getElapsedMillis() / 1000, metrics.getPages(), Math.round(metrics.perSecond(metrics.getPages())),
+                metrics.getRowsWritten(), Math.round(metrics.perSecond(metrics.getRowsWritten())),
+                TimeUnit.NANOSECONDS.toMillis(metrics.getPageLatency().percentileNanos(50)),
+                TimeUnit.NANOSECONDS.toMillis(metrics.getPageLatency().percentileNanos(99)),
+                Math.round(lemmaFinder.getWordFormCache().getHitRate() * 100));
+    }
+
+    /**
+     * Counters of the last indexing.
+     */
+    public CrawlMetrics getMetrics() {
+        return metrics;
+    }
+
     private void initializeIndexing(SitesList sitesList) {
-        siteCRUDService.deleteExistingSitesOfSitesList(sitesList);
-        siteCRUDService.createSitesWithIndexingStatus(sitesList);
+        if (crawlerSettings.isIncrementalIndexing()) {
+            siteCRUDService.createMissingSitesWithIndexingStatus(sitesList);
+        } else {
+            siteCRUDService.deleteExistingSitesOfSitesList(sitesList);
+            siteCRUDService.createSitesWithIndexingStatus(sitesList);
+        }
 //        indexSitesIsRunning = true;
         hasStoppedByUser = false;
+        metrics.start();
     }
 
-    private List<WebsiteScraperTask3> createScraperTasks(SitesList sitesList) throws MalformedURLException {
-        List<WebsiteScraperTask3> tasks = new ArrayList<>();
+    private List<SiteCrawler> createSiteCrawlers(SitesList sitesList, IndexingPipeline pipeline) throws MalformedURLException {
+        List<SiteCrawler> crawlers = new ArrayList<>();
         for (Site site : sitesList.getSites()) {
             SiteEntity siteEntity = prepareSiteEntity(site);
             URL siteURL = new URL(site.getUrl());
-            IndexingService indexingService = new IndexingService(sitesList, siteCRUDService, pageCRUDService,
-                    indexEntityCRUDService, lemmaCRUDService);
-            WebsiteScraperTask3 scraperTask = new WebsiteScraperTask3(siteURL, siteEntity, siteCRUDService, pageCRUDService, indexingService);
-            tasks.add(scraperTask);
+            SiteCrawler crawler = new SiteCrawler(siteURL, siteEntity, pipeline, lemmaFinder, crawlerSettings);
+            crawler.setBudget(CrawlBudget.of(crawlerSettings, site));
+            crawlers.add(crawler);
         }
-        return tasks;
+        return crawlers;
     }
 
     private SiteEntity prepareSiteEntity(Site site) {
@@ -84,18 +129,43 @@ public class SitesIndexer {
         SiteEntity siteEntity = siteCRUDService.getById(id);
         siteEntity.setStatus(Status.QUEUED);
         siteEntity.setStatusTime(LocalDateTime.now());
+        siteEntity.setLastError(null);
         runningSitesList.add(siteEntity);
         siteCRUDService.updateById(siteEntity);
         return siteEntity;
     }
 
-    private void processScraperTasks(List<WebsiteScraperTask3> tasks) throws LoopSiteIndexationCustomException {
+    /**
+     * Crawls the sites in parallel, no more than maxConcurrentSites at a time. Every site gets
+     * the INDEXED or FAILED status right after its own crawl ends.
+     */
+    private void processSiteCrawlers(List<SiteCrawler> crawlers) throws LoopSiteIndexationCustomException {
+        Map<String, Exception> failedSites = new ConcurrentHashMap<>();
+        int siteThreads = Math.max(1, Math.min(crawlerSettings.getMaxConcurrentSites(), crawlers.size()));
+        ExecutorService siteExecutor = Executors.newFixedThreadPool(siteThreads,
+                PipelineStage.namedThreadFactory("site-crawler"));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (SiteCrawler crawler : crawlers) {
+                futures.add(siteExecutor.submit(() -> {
+                    if (!hasStoppedByUser) {
+                        processSingleCrawler(crawler, failedSites);
+                    } else {
+                        handleStoppedByUser(crawler.getMainSite(), failedSites);
+                    }
+                }));
+            }
+            awaitAll(futures);
+        } finally {
+            siteExecutor.shutdownNow();
+        }
+
+        // keep the order of the configured sites in the report
         LinkedHashMap<String, Exception> exceptionsWithSiteUrl = new LinkedHashMap<>();
-        for (WebsiteScraperTask3 task : tasks) {
-            if (!hasStoppedByUser) {
-                processSingleTask(task, exceptionsWithSiteUrl);
-            } else {
-                handleStoppedByUser(task.getMainSite(), task, exceptionsWithSiteUrl);
+        for (SiteCrawler crawler : crawlers) {
+            String siteUrl = crawler.getMainSite().getUrl();
+            if (failedSites.containsKey(siteUrl)) {
+                exceptionsWithSiteUrl.put(siteUrl, failedSites.get(siteUrl));
             }
         }
         if (!exceptionsWithSiteUrl.isEmpty()) {
@@ -103,21 +173,32 @@ public class SitesIndexer {
         }
     }
 
-    private void processSingleTask(WebsiteScraperTask3 task, LinkedHashMap<String, Exception> exceptionsWithSiteUrl) {
-        // check if the task has been stopped by user
-        if (!hasStoppedByUser) {
-            pool = new ForkJoinPool();
+    private void awaitAll(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopCrawling();
+                return;
+            } catch (ExecutionException e) {
+                logger.error("Site crawl ended with an unexpected error", e.getCause());
+            }
         }
-        SiteEntity site = task.getMainSite();
+    }
+
+    private void processSingleCrawler(SiteCrawler crawler, Map<String, Exception> exceptionsWithSiteUrl) {
+        activeCrawlers.add(crawler);
+        SiteEntity site = crawler.getMainSite();
         try {
             Instant beforeInvokingTask = Instant.now();
-            startTaskIndexing(task, site);
+            startSiteIndexing(crawler, site);
             if (hasStoppedByUser) {
-                handleStoppedByUser(site, task, exceptionsWithSiteUrl);
+                handleStoppedByUser(site, exceptionsWithSiteUrl);
                 return;
             }
-            updateLemmasFrequency(site);
-            completeTaskIndexing(task, site);
+            // lemma frequencies are kept up to date by PageBatchWriter while pages are written
+            completeSiteIndexing(site);
 
             Instant finishedIndexing = Instant.now();
             logger.info("Duration of indexing site {}: {} ms", site.getUrl(),
@@ -126,65 +207,58 @@ public class SitesIndexer {
         } catch (RejectedExecutionException | CancellationException e) {
             String errorMessage = "Индексация остановлена пользователем";
             SiteStoppedByUserException siteStoppedByUserException = new SiteStoppedByUserException("Индексация остановлена пользователем", e);
-            handleTaskException(task, site, siteStoppedByUserException, exceptionsWithSiteUrl, errorMessage);
+            handleCrawlerException(crawler, site, siteStoppedByUserException, exceptionsWithSiteUrl, errorMessage);
         } catch (SiteIndexationErrorException | UnableToConnectToSiteException e) {
             String errorMessage = e.getClass().getSimpleName() + ": " + e.getMessage();
             SiteIndexationErrorException siteIndexationErrorException = new SiteIndexationErrorException(e.getMessage(), e);
-            handleTaskException(task, site, siteIndexationErrorException, exceptionsWithSiteUrl, errorMessage);
+            handleCrawlerException(crawler, site, siteIndexationErrorException, exceptionsWithSiteUrl, errorMessage);
+        } catch (RuntimeException e) {
+            logger.error("Unexpected error while indexing site '{}'", site.getUrl(), e);
+            String errorMessage = e.getClass().getSimpleName() + ": " + e.getMessage();
+            SiteIndexationErrorException siteIndexationErrorException = new SiteIndexationErrorException(errorMessage, e);
+            handleCrawlerException(crawler, site, siteIndexationErrorException, exceptionsWithSiteUrl, errorMessage);
+        } finally {
+            activeCrawlers.remove(crawler);
         }
     }
 
-    private void startTaskIndexing(WebsiteScraperTask3 task, SiteEntity site) {
+    private void startSiteIndexing(SiteCrawler crawler, SiteEntity site) {
         site.setStatus(Status.INDEXING);
         siteCRUDService.updateById(site);
-        pool.invoke(task);
+        if (crawlerSettings.isIncrementalIndexing()) {
+            crawler.setKnownPages(pageCRUDService.getValidatorsBySiteId(site.getId()));
+        }
+        crawler.crawl();
     }
 
-    public void handleStoppedByUser(SiteEntity site, WebsiteScraperTask3 task, LinkedHashMap<String, Exception> exceptionsWithSiteUrl) {
+    public void handleStoppedByUser(SiteEntity site, Map<String, Exception> exceptionsWithSiteUrl) {
         logger.error("Индексация остановлена пользователем without an error");
         site.setStatus(Status.FAILED);
         site.setLastError("Индексация остановлена пользователем");
         siteCRUDService.updateById(site);
         SiteStoppedByUserException siteStoppedByUserException = new SiteStoppedByUserException("Индексация остановлена пользователем");
         exceptionsWithSiteUrl.put(site.getUrl(), siteStoppedByUserException);
-        task.resetPageErrorCount();
-    }
-
-    public void updateLemmasFrequency(SiteEntity site) {
-        Instant beforeUpdatingLemmas = Instant.now();
-        logger.info("Started to update lemmas frequency: {}", beforeUpdatingLemmas);
-        List<Lemma> lemmaListOfSite = lemmaCRUDService.getLemmasBySiteId(site.getId());
-        for (Lemma lemma : lemmaListOfSite) {
-            int frequencyLemma = indexEntityCRUDService.countLemmasInAPageByLemmaID(lemma.getId());
-            lemma.setFrequency(frequencyLemma);
-            lemmaCRUDService.updateById(lemma);
-        }
-        Instant afterUpdatingLemmas = Instant.now();
-        logger.info("Duration of updating {} lemmas for site {}: {} ms", lemmaListOfSite.size(),
-                site.getUrl(), Duration.between(beforeUpdatingLemmas, afterUpdatingLemmas).toMillis());
+        runningSitesList.remove(site);
     }
 
-    private void completeTaskIndexing(WebsiteScraperTask3 task, SiteEntity site) {
+    private void completeSiteIndexing(SiteEntity site) {
         runningSitesList.remove(site);
         indexedSites.add(site);
         site.setStatus(Status.INDEXED);
         siteCRUDService.updateById(site);
-        task.resetPageErrorCount();
     }
 
-    private void handleTaskException(WebsiteScraperTask3 task, SiteEntity site, Exception e,
-                                     LinkedHashMap<String, Exception> exceptionsWithSiteUrl, String errorMessage) {
+    private void handleCrawlerException(SiteCrawler crawler, SiteEntity site, Exception e,
+                                     Map<String, Exception> exceptionsWithSiteUrl, String errorMessage) {
         logger.error(errorMessage);
         site.setLastError(errorMessage);
         site.setStatus(Status.FAILED);
         siteCRUDService.updateById(site);
         exceptionsWithSiteUrl.put(site.getUrl(), e);
         runningSitesList.remove(site);
-        task.cancel(true);
-        task.resetPageErrorCount();
+        crawler.stop();
         if (e instanceof TooManyPageErrorsException) {
             logger.error(e.getMessage() + " and shutdown has been activated");
-            pool.shutdownNow();
         }
     }
 
@@ -193,8 +267,29 @@ public class SitesIndexer {
         isComplete = true;
     }
 
-    public ForkJoinPool getPool() {
-        return pool;
+    public void stopCrawling() {
+        for (SiteCrawler crawler : activeCrawlers) {
+            crawler.stop();
+        }
+    }
+
+    /**
+     * Stops the crawl and waits until the crawlers save their checkpoints.
+     */
+    public void shutdown(Duration timeout) {
+        stopCrawling();
+        Instant deadline = Instant.now().plus(timeout);
+        while (!activeCrawlers.isEmpty() && Instant.now().isBefore(deadline)) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (!activeCrawlers.isEmpty()) {
+            logger.warn("{} site crawlers did not stop in {} s", activeCrawlers.size(), timeout.toSeconds());
+        }
     }
 
     public List<SiteEntity> getRunningSitesList() {
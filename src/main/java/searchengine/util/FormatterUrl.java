@@ -14,7 +14,7 @@ public class FormatterUrl {
         if (url.startsWith("\"") && url.endsWith("\"")) {
             url = url.substring(1, url.length() - 1);
         }
-        if (!(url == null) && !url.endsWith("/")) {
+        if (!(url == null) && !url.endsWith("/") && !url.contains("?")) { // a query is not a directory
             url = url.concat("/");
         }
         if (!(url.startsWith("https://") || url.startsWith("http://"))) {
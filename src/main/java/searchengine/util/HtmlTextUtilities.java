@@ -1,13 +1,10 @@
 package searchengine.util;
-import org.apache.lucene.morphology.LuceneMorphology;
-import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import searchengine.services.LemmaFinder;
 
-import java.io.IOException;
 import java.sql.Time;
 import java.time.Duration;
 import java.time.Instant;
@@ -22,7 +19,10 @@ public class HtmlTextUtilities {
         return doc.title();
     }
 
-    public static String extractSnippetContainingWord(String html, String query) {
+    /**
+     * @param lemmaFinder the shared {@link LemmaFinder} from {@link searchengine.services.MorphologyProvider}
+     */
+    public static String extractSnippetContainingWord(String html, String query, LemmaFinder lemmaFinder) {
 //        // This matches full HTML elements containing the query
 //        Pattern pattern = Pattern.compile(
 //                "<[^>]+>[^<]*?" + Pattern.quote(query) + "[^<]*?</[^>]+>",
@@ -53,86 +53,79 @@ public class HtmlTextUtilities {
             snippet = snippet.replaceAll("(?i)\\b" + Pattern.quote(query) + "\\b", "<b>" + query + "</b>");
 
         } else {
-            try {
-                LuceneMorphology luceneMorphology = new RussianLuceneMorphology();
-                LemmaFinder lemmaFinder = new LemmaFinder(luceneMorphology);
-
-                String[] arrayOfWordsFromText = text.split("[^\\p{L}\\p{N}']+");
-                logger.debug("Length of array: {}", arrayOfWordsFromText.length);
-
-                Set<String> uniqueWordsFromText = new LinkedHashSet<>(Arrays.asList(arrayOfWordsFromText));
-                logger.debug("Length of uniqueWordsFromText {}", uniqueWordsFromText.size());
-
-                LinkedHashMap<String, List<String>> wordsAndLemmasFromText = new LinkedHashMap<>();
-//                List<String> listOfWordsFromLemma = new ArrayList<>();
-                int count2 = 1;
-                for (String wordFromText : arrayOfWordsFromText) {
-                    String lemmaOfWordFromText = "";
-                    try {
-                        lemmaOfWordFromText = luceneMorphology.getNormalForms(wordFromText.toLowerCase()).get(0);
-                    } catch (Exception e){
-                    }
-                    if (wordsAndLemmasFromText.containsKey(lemmaOfWordFromText)) {
-                        List<String> listOfWordsFromLemma = wordsAndLemmasFromText.get(lemmaOfWordFromText);
-                        listOfWordsFromLemma.add(wordFromText);
-                        wordsAndLemmasFromText.replace(lemmaOfWordFromText, listOfWordsFromLemma);
-                    } else {
-                        List<String> listOfWordsFromLemma = new ArrayList<>();
-                        listOfWordsFromLemma.add(wordFromText);
-                        wordsAndLemmasFromText.put(lemmaOfWordFromText, listOfWordsFromLemma);
-                    }
+            String[] arrayOfWordsFromText = text.split("[^\\p{L}\\p{N}']+");
+            logger.debug("Length of array: {}", arrayOfWordsFromText.length);
+
+            Set<String> uniqueWordsFromText = new LinkedHashSet<>(Arrays.asList(arrayOfWordsFromText));
+            logger.debug("Length of uniqueWordsFromText {}", uniqueWordsFromText.size());
+
+            LinkedHashMap<String, List<String>> wordsAndLemmasFromText = new LinkedHashMap<>();
+//            List<String> listOfWordsFromLemma = new ArrayList<>();
+            int count2 = 1;
+            for (String wordFromText : arrayOfWordsFromText) {
+                String lemmaOfWordFromText = "";
+                try {
+                    lemmaOfWordFromText = lemmaFinder.getNormalForms(wordFromText.toLowerCase()).get(0);
+                } catch (Exception e){
                 }
-
-                String foundWord = "";
-                List<String> queryLemmasList = new ArrayList<>();
-                for (String queryWord : query.split("\\s")) {
-//                    logger.info("Query word inside loop: {}", queryWord);
-                    String lemmaOfQueryWord = luceneMorphology.getNormalForms(queryWord.toLowerCase()).get(0);
-//                    logger.info("Lemma of query word inside loop: {}", lemmaOfQueryWord);
-                    queryLemmasList.add(lemmaOfQueryWord);
+                if (wordsAndLemmasFromText.containsKey(lemmaOfWordFromText)) {
+                    List<String> listOfWordsFromLemma = wordsAndLemmasFromText.get(lemmaOfWordFromText);
+                    listOfWordsFromLemma.add(wordFromText);
+                    wordsAndLemmasFromText.replace(lemmaOfWordFromText, listOfWordsFromLemma);
+                } else {
+                    List<String> listOfWordsFromLemma = new ArrayList<>();
+                    listOfWordsFromLemma.add(wordFromText);
+                    wordsAndLemmasFromText.put(lemmaOfWordFromText, listOfWordsFromLemma);
                 }
-                for (String lemmaOfQueryWord : queryLemmasList) {
-                    boolean lemmaOfQueryWordIsInText = wordsAndLemmasFromText.containsKey(lemmaOfQueryWord);
-                    if (lemmaOfQueryWordIsInText) {
-                        foundWord = wordsAndLemmasFromText.get(lemmaOfQueryWord).get(0);
-//                        logger.info("found word insige loop queryLemmasList: {}", foundWord);
-                        if (!foundWord.equals("не")) {
-                            break;
-                        }
+            }
+
+            String foundWord = "";
+            List<String> queryLemmasList = new ArrayList<>();
+            for (String queryWord : query.split("\\s")) {
+//                logger.info("Query word inside loop: {}", queryWord);
+                String lemmaOfQueryWord = lemmaFinder.getNormalForms(queryWord.toLowerCase()).get(0);
+//                logger.info("Lemma of query word inside loop: {}", lemmaOfQueryWord);
+                queryLemmasList.add(lemmaOfQueryWord);
+            }
+            for (String lemmaOfQueryWord : queryLemmasList) {
+                boolean lemmaOfQueryWordIsInText = wordsAndLemmasFromText.containsKey(lemmaOfQueryWord);
+                if (lemmaOfQueryWordIsInText) {
+                    foundWord = wordsAndLemmasFromText.get(lemmaOfQueryWord).get(0);
+//                    logger.info("found word insige loop queryLemmasList: {}", foundWord);
+                    if (!foundWord.equals("не")) {
+                        break;
                     }
                 }
+            }
 
-                if (foundWord.isEmpty()) {
-                    return snippet;
-                }
-//                logger.info("Found word: {}", foundWord);
-                pattern = Pattern.compile("([^.?!]{0,170}\\b" + Pattern.quote(foundWord) + "\\b[^.?!]*)([.?!]|$)",
-                        Pattern.CASE_INSENSITIVE);
-                Matcher matcher2 = pattern.matcher(text);
-                matcher2.find();
-//                if (!matcher2.find()) {
-//                    return snippet;
-//                }
-                String matchedSentence = matcher2.group(1).trim();
-                int desiredLength = 245;
+            if (foundWord.isEmpty()) {
+                return snippet;
+            }
+//            logger.info("Found word: {}", foundWord);
+            pattern = Pattern.compile("([^.?!]{0,170}\\b" + Pattern.quote(foundWord) + "\\b[^.?!]*)([.?!]|$)",
+                    Pattern.CASE_INSENSITIVE);
+            Matcher matcher2 = pattern.matcher(text);
+            matcher2.find();
+//            if (!matcher2.find()) {
+//                return snippet;
+//            }
+            String matchedSentence = matcher2.group(1).trim();
+            int desiredLength = 245;
 
-                snippet = matchedSentenceSizeEditor(desiredLength, matcher2, text);
+            snippet = matchedSentenceSizeEditor(desiredLength, matcher2, text);
 
-                HashSet<String> wordsFromFoundLemma = new HashSet<>();
+            HashSet<String> wordsFromFoundLemma = new HashSet<>();
 
-                for (String lemmaOfQueryWord : queryLemmasList) {
-//                    logger.info("lemma of query word: {}", lemmaOfQueryWord);
-                    try {
-                        wordsFromFoundLemma.addAll(wordsAndLemmasFromText.get(lemmaOfQueryWord));
-                    } catch (NullPointerException e) {
-                    }
-                }
-                for (String word : wordsFromFoundLemma) {
-//                    logger.info("inside loop wordsFromFoundLemma, word: {}", word);
-                    snippet = snippet.replaceAll("(?i)\\b" + Pattern.quote(word) + "\\b", "<b>" + word + "</b>");
+            for (String lemmaOfQueryWord : queryLemmasList) {
+//                logger.info("lemma of query word: {}", lemmaOfQueryWord);
+                try {
+                    wordsFromFoundLemma.addAll(wordsAndLemmasFromText.get(lemmaOfQueryWord));
+                } catch (NullPointerException e) {
                 }
-            } catch (IOException e) {
-                logger.error("error in LuceneMorphology: ", e);
+            }
+            for (String word : wordsFromFoundLemma) {
+//                logger.info("inside loop wordsFromFoundLemma, word: {}", word);
+                snippet = snippet.replaceAll("(?i)\\b" + Pattern.quote(word) + "\\b", "<b>" + word + "</b>");
             }
         }
 
@@ -0,0 +1,58 @@
+package searchengine.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with logarithmic buckets: every next bucket is 5% wider than the
+ * previous one, so a percentile is known within 5% for any spread of values, and recording
+ * a value is one atomic increment.
+ */
+public class LatencyHistogram {
+    private static final double GROWTH = 1.05;
+    private static final double LOG_GROWTH = Math.log(GROWTH);
+    // 1.05^512 microseconds is far longer than any page takes
+    private static final int BUCKETS = 512;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        long micros = Math.max(1, nanos / 1000);
+        int bucket = (int) Math.min(BUCKETS - 1, Math.floor(Math.log(micros) / LOG_GROWTH));
+        counts.incrementAndGet(bucket);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return upper bound of the bucket the percentile fell into, or 0 if there are no values
+     */
+    public long percentileNanos(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        int bucket = 0;
+        for (; bucket < BUCKETS - 1; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                break;
+            }
+        }
+        return (long) (Math.pow(GROWTH, bucket + 1) * 1000);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+}
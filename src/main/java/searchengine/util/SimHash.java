@@ -0,0 +1,66 @@
+package searchengine.util;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 64-bit SimHash of a text over three-word shingles. Fingerprints of nearly identical texts
+ * differ in a few bits, so text similarity is checked by the Hamming distance.
+ */
+public class SimHash {
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int SHINGLE_SIZE = 3;
+    // on shorter texts a few changed words flip too many bits for the fingerprint to mean anything
+    private static final int MIN_WORDS = 20;
+
+    private SimHash() {
+    }
+
+    /**
+     * @return the text fingerprint or null if the text has fewer than 20 words
+     */
+    public static Long of(String text) {
+        String[] words = NON_WORD.split(text.toLowerCase(Locale.ROOT).trim());
+        if (words.length < MIN_WORDS) {
+            return null;
+        }
+        int[] weights = new int[64];
+        for (int i = 0; i + SHINGLE_SIZE <= words.length; i++) {
+            long hash = shingleHash(words, i);
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((hash >>> bit) & 1) == 1 ? 1 : -1;
+            }
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    public static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+
+    private static long shingleHash(String[] words, int start) {
+        long hash = 0xcbf29ce484222325L; // FNV-1a
+        for (int i = start; i < start + SHINGLE_SIZE; i++) {
+            String word = words[i];
+            for (int j = 0; j < word.length(); j++) {
+                hash ^= word.charAt(j);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= ' ';
+            hash *= 0x100000001b3L;
+        }
+        // FNV leaves the high bits poorly mixed, every bit takes part in the vote
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
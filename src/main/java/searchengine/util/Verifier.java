@@ -7,6 +7,9 @@ import org.apache.commons.beanutils.converters.URLConverter;
 import org.apache.commons.validator.routines.UrlValidator;
 
 public class Verifier {
+    // UrlValidator is immutable and thread-safe, one instance serves all checks
+    private static final UrlValidator URL_VALIDATOR = new UrlValidator(new String[]{"http", "https"});
+
     public static boolean siteIsValidFormat(String siteUrl) {
         if (siteUrl == null) {
             return false;
@@ -15,7 +18,6 @@ public class Verifier {
             return false;
         }
         siteUrl = FormatterUrl.formatStringIntoURL(siteUrl);
-        UrlValidator validator = new UrlValidator(new String[]{"http", "https"});
-        return validator.isValid(siteUrl);
+        return URL_VALIDATOR.isValid(siteUrl);
     }
 }
@@ -0,0 +1,65 @@
+package searchengine.scrapers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class NearDuplicateIndexTest {
+    private static final long ORIGINAL = 0x0123_4567_89ab_cdefL;
+
+    @Test
+    void findsCopyAtMaxDistance() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3); // four bands of 16 bits
+        index.add(ORIGINAL, "/original/");
+
+        // three bands differ, the fourth still leads to the original
+        assertEquals("/original/", index.findOrAdd(flip(ORIGINAL, 0, 16, 32), "/copy/"));
+    }
+
+    @Test
+    void skipsPageOneBitFurtherThanMaxDistance() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+        index.add(ORIGINAL, "/original/");
+
+        // a bit in every band: no band leads to the original
+        assertNull(index.findOrAdd(flip(ORIGINAL, 0, 16, 32, 48), "/spread/"));
+        // all bits in one band: three bands lead to the original, but the distance is too large
+        assertNull(index.findOrAdd(flip(ORIGINAL, 0, 1, 2, 3), "/close/"));
+    }
+
+    @Test
+    void addsPageWithoutOriginal() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+        long fingerprint = flip(ORIGINAL, 0, 16, 32, 48);
+
+        assertNull(index.findOrAdd(fingerprint, "/first/"));
+        assertEquals("/first/", index.findOrAdd(flip(fingerprint, 63), "/second/"));
+        assertNull(index.findOrAdd(fingerprint, "/first/")); // a page is not a copy of itself
+    }
+
+    @Test
+    void zeroDistanceFindsOnlyEqualFingerprints() {
+        NearDuplicateIndex index = new NearDuplicateIndex(0);
+        index.add(ORIGINAL, "/original/");
+
+        assertEquals("/original/", index.findOrAdd(ORIGINAL, "/copy/"));
+        assertNull(index.findOrAdd(flip(ORIGINAL, 63), "/other/"));
+    }
+
+    @Test
+    void bandsCoverAllBitsWhenTheyAreUneven() {
+        NearDuplicateIndex index = new NearDuplicateIndex(4); // bands of 13, 13, 13, 13 and 12 bits
+        index.add(ORIGINAL, "/original/");
+
+        assertEquals("/original/", index.findOrAdd(flip(ORIGINAL, 0, 13, 26, 63), "/copy/"));
+        assertNull(index.findOrAdd(flip(ORIGINAL, 0, 13, 26, 39, 52), "/other/"));
+    }
+
+    private static long flip(long fingerprint, int... bits) {
+        for (int bit : bits) {
+            fingerprint ^= 1L << bit;
+        }
+        return fingerprint;
+    }
+}
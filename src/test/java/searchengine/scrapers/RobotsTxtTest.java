@@ -0,0 +1,70 @@
+package searchengine.scrapers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RobotsTxtTest {
+    private static final String AGENT = "searchengine";
+
+    @Test
+    void longestMatchingRuleWins() {
+        RobotsTxt robotsTxt = RobotsTxt.parse("User-agent: *\nDisallow: /private/\nAllow: /private/open\n", AGENT);
+
+        assertFalse(robotsTxt.isAllowed("/private/closed"));
+        assertTrue(robotsTxt.isAllowed("/private/open/page"));
+        assertTrue(robotsTxt.isAllowed("/public"));
+    }
+
+    @Test
+    void allowWinsRulesOfEqualLength() {
+        RobotsTxt robotsTxt = RobotsTxt.parse("User-agent: *\nDisallow: /page\nAllow: /page\n", AGENT);
+
+        assertTrue(robotsTxt.isAllowed("/page"));
+    }
+
+    @Test
+    void dollarAnchorsRuleToTheEndOfPath() {
+        RobotsTxt robotsTxt = RobotsTxt.parse("User-agent: *\nDisallow: /*.pdf$\n", AGENT);
+
+        assertFalse(robotsTxt.isAllowed("/files/report.pdf"));
+        assertTrue(robotsTxt.isAllowed("/files/report.pdf?download=1"));
+    }
+
+    @Test
+    void asteriskMatchesAnySequence() {
+        RobotsTxt robotsTxt = RobotsTxt.parse("User-agent: *\nDisallow: /search?*q=\n", AGENT);
+
+        assertFalse(robotsTxt.isAllowed("/search?page=2&q=phone"));
+        assertTrue(robotsTxt.isAllowed("/search"));
+    }
+
+    @Test
+    void ownGroupIsMatchedByExactProductToken() {
+        String content = "User-agent: search\nDisallow: /\n\nUser-agent: SearchEngine/1.0\nDisallow: /own\n\n"
+                + "User-agent: *\nDisallow: /all\n";
+        RobotsTxt robotsTxt = RobotsTxt.parse(content, AGENT);
+
+        assertFalse(robotsTxt.isAllowed("/own"));
+        assertTrue(robotsTxt.isAllowed("/all"));
+        assertTrue(robotsTxt.isAllowed("/other"));
+    }
+
+    @Test
+    void readsCrawlDelayAndSitemaps() {
+        RobotsTxt robotsTxt = RobotsTxt.parse("User-agent: *\nCrawl-delay: 1.5\nSitemap: https://site.ru/sitemap.xml\n",
+                AGENT);
+
+        assertEquals(1500, robotsTxt.getCrawlDelayMillis());
+        assertEquals("https://site.ru/sitemap.xml", robotsTxt.getSitemaps().get(0));
+    }
+
+    @Test
+    void unreachableRobotsTxtDisallowsEverything() {
+        assertFalse(RobotsTxt.unreachable().isAllowed("/"));
+        assertFalse(RobotsTxt.unreachable().isAllowed("/page"));
+        assertTrue(RobotsTxt.allowAll().isAllowed("/page"));
+    }
+}
@@ -0,0 +1,89 @@
+package searchengine.scrapers;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.MalformedURLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UrlCanonicalizerTest {
+    private static final String SITE_URL = "https://www.site.ru/";
+
+    @Test
+    void foldsWwwAndSchemeIntoTheSiteOrigin() throws MalformedURLException {
+        UrlCanonicalizer urlCanonicalizer = new UrlCanonicalizer(SITE_URL, false);
+
+        assertEquals("https://www.site.ru/catalog/", urlCanonicalizer.canonicalize("http://site.ru/catalog").toString());
+        assertEquals("https://www.site.ru/catalog/",
+                urlCanonicalizer.canonicalize("https://WWW.site.ru:443/catalog//#top").toString());
+    }
+
+    @Test
+    void dropsTrackingParametersAndSortsTheRest() throws MalformedURLException {
+        UrlCanonicalizer urlCanonicalizer = new UrlCanonicalizer(SITE_URL, true);
+
+        assertEquals("https://www.site.ru/catalog/?page=2&sort=price", urlCanonicalizer
+                .canonicalize("https://site.ru/catalog?utm_source=mail&sort=price&gclid=1&page=2").toString());
+        assertEquals("https://www.site.ru/catalog/",
+                urlCanonicalizer.canonicalize("https://site.ru/catalog?utm_campaign=spring").toString());
+    }
+
+    @Test
+    void skipsQueryUrlsUnlessAllowed() throws MalformedURLException {
+        UrlCanonicalizer urlCanonicalizer = new UrlCanonicalizer(SITE_URL, false);
+
+        assertNull(urlCanonicalizer.canonicalize("https://site.ru/catalog?page=2"));
+        assertEquals("https://www.site.ru/catalog/",
+                urlCanonicalizer.canonicalize("https://site.ru/catalog?yclid=5").toString());
+    }
+
+    @Test
+    void skipsOtherSitesFilesAndTheMainPage() throws MalformedURLException {
+        UrlCanonicalizer urlCanonicalizer = new UrlCanonicalizer(SITE_URL, false);
+
+        assertNull(urlCanonicalizer.canonicalize("https://other.ru/catalog"));
+        assertNull(urlCanonicalizer.canonicalize("https://site.ru/images/photo.jpg"));
+        assertNull(urlCanonicalizer.canonicalize("https://site.ru/"));
+    }
+
+    @Test
+    void recognizesTheMainPage() throws MalformedURLException {
+        UrlCanonicalizer urlCanonicalizer = new UrlCanonicalizer(SITE_URL, false);
+
+        assertTrue(urlCanonicalizer.isMainPage("http://site.ru"));
+        assertTrue(urlCanonicalizer.isMainPage("https://www.site.ru/?utm_source=mail"));
+        assertFalse(urlCanonicalizer.isMainPage("https://www.site.ru/catalog/"));
+    }
+
+    @Test
+    void normalizesPagesTheCrawlerSkips() throws MalformedURLException {
+        UrlCanonicalizer urlCanonicalizer = new UrlCanonicalizer(SITE_URL, false);
+
+        assertEquals("https://www.site.ru/catalog/?page=2",
+                urlCanonicalizer.normalize("https://site.ru/catalog?page=2&utm_source=mail").toString());
+        assertEquals("https://www.site.ru/news/2024/", urlCanonicalizer.normalize("http://site.ru/news/2024").toString());
+        assertEquals("https://www.site.ru/", urlCanonicalizer.normalize("https://site.ru").toString());
+        assertNull(urlCanonicalizer.normalize("https://other.ru/catalog"));
+    }
+
+    @Test
+    void rejectsAnotherPortOfTheSiteHost() throws MalformedURLException {
+        UrlCanonicalizer urlCanonicalizer = new UrlCanonicalizer(SITE_URL, false);
+
+        assertNull(urlCanonicalizer.canonicalize("https://site.ru:8080/catalog"));
+        assertNull(urlCanonicalizer.normalize("http://site.ru:8443/catalog"));
+        assertEquals("https://www.site.ru/catalog/", urlCanonicalizer.canonicalize("http://site.ru:80/catalog").toString());
+    }
+
+    @Test
+    void keepsTheNonDefaultPortOfTheSite() throws MalformedURLException {
+        UrlCanonicalizer urlCanonicalizer = new UrlCanonicalizer("http://localhost:8080/", false);
+
+        assertEquals("http://localhost:8080/catalog/",
+                urlCanonicalizer.canonicalize("http://localhost:8080/catalog").toString());
+        assertNull(urlCanonicalizer.canonicalize("http://localhost/catalog"));
+    }
+}
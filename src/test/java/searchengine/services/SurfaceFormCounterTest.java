@@ -0,0 +1,67 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SurfaceFormCounterTest {
+
+    @Test
+    void countsRepeatedForms() {
+        SurfaceFormCounter counter = new SurfaceFormCounter(16);
+        add(counter, "кот");
+        add(counter, "дом");
+        add(counter, "кот");
+
+        assertEquals(2, counter.size());
+        assertEquals(Map.of("кот", 2, "дом", 1), countsOf(counter));
+    }
+
+    @Test
+    void keepsCountsWhenTheTableGrows() {
+        SurfaceFormCounter counter = new SurfaceFormCounter(1);
+        for (int round = 1; round <= 3; round++) {
+            for (int i = 0; i < 10_000; i++) {
+                add(counter, "слово" + i);
+            }
+        }
+
+        Map<String, Integer> counts = countsOf(counter);
+        assertEquals(10_000, counter.size());
+        assertEquals(10_000, counts.size());
+        assertEquals(3, counts.get("слово0"));
+        assertEquals(3, counts.get("слово9999"));
+    }
+
+    @Test
+    void separatesFormsWithTheSameHash() {
+        // "Aa" and "BB" have the same String.hashCode, so do all their concatenations of one length
+        String[] colliding = {"AaAaAa", "AaAaBB", "AaBBAa", "AaBBBB", "BBAaAa", "BBAaBB", "BBBBAa", "BBBBBB"};
+        SurfaceFormCounter counter = new SurfaceFormCounter(4);
+        for (int i = 0; i < colliding.length; i++) {
+            for (int repeat = 0; repeat <= i; repeat++) {
+                add(counter, colliding[i]);
+            }
+        }
+
+        Map<String, Integer> counts = countsOf(counter);
+        assertEquals(colliding.length, counter.size());
+        for (int i = 0; i < colliding.length; i++) {
+            assertEquals(i + 1, counts.get(colliding[i]));
+        }
+    }
+
+    private static void add(SurfaceFormCounter counter, String form) {
+        char[] buffer = (form + "#").toCharArray(); // the counter must only look at the first length chars
+        counter.add(buffer, form.length());
+    }
+
+    private static Map<String, Integer> countsOf(SurfaceFormCounter counter) {
+        Map<String, Integer> counts = new HashMap<>();
+        counter.forEach(counts::put);
+        return counts;
+    }
+}
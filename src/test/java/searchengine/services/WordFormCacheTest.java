@@ -0,0 +1,90 @@
+package searchengine.services;
+
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WordFormCacheTest {
+    private CountingMorphology morphology;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        morphology = new CountingMorphology();
+    }
+
+    @Test
+    void repeatedWordIsTakenFromTheCache() {
+        WordFormCache cache = new WordFormCache(morphology, 1024);
+        WordFormCache.WordForm first = cache.get("кот");
+        WordFormCache.WordForm second = cache.get("кот");
+
+        assertTrue(first == second);
+        assertEquals(1, morphology.lookUps);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void newWordEvictsTheWordInItsSlot() {
+        WordFormCache cache = new WordFormCache(morphology, 1); // one slot shared by every word
+        cache.get("кот");
+        cache.get("дом");
+        WordFormCache.WordForm evicted = cache.get("кот");
+
+        assertEquals("кот", evicted.getWord());
+        assertEquals(3, morphology.lookUps);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+
+        cache.get("кот");
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void zeroCapacityNeverCaches() {
+        WordFormCache cache = new WordFormCache(morphology, 0);
+        cache.get("кот");
+        cache.get("кот");
+
+        assertEquals(2, morphology.lookUps);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0.0, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void bufferLookupMatchesTheCachedWord() {
+        WordFormCache cache = new WordFormCache(morphology, 1);
+        WordFormCache.WordForm cached = cache.get("кот");
+
+        assertTrue(cache.get("котик".toCharArray(), 3) == cached);
+        assertEquals(1, cache.getHitCount());
+
+        WordFormCache.WordForm other = cache.get("ток".toCharArray(), 3); // same length, other letters
+        assertEquals("ток", other.getWord());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, morphology.lookUps);
+    }
+
+    /**
+     * Russian dictionary that counts how many words were looked up in it.
+     */
+    private static class CountingMorphology extends RussianLuceneMorphology {
+        private int lookUps = 0;
+
+        private CountingMorphology() throws IOException {
+        }
+
+        @Override
+        public List<String> getNormalForms(String word) {
+            lookUps++;
+            return super.getNormalForms(word);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WordTokenizerTest {
+
+    @Test
+    void splitsWordsOnAlphabetChange() {
+        assertEquals(List.of("купить", "iphone", "в", "москве"), words("Купить iPhone в Москве"));
+        assertEquals(List.of("смартфон", "galaxy", "про"), words("СмартфонGalaxyПро"));
+    }
+
+    @Test
+    void splitsWordsOnDigitsAndPunctuation() {
+        assertEquals(List.of("модель", "a", "цена", "руб"), words("модель A15, цена: 999 руб."));
+    }
+
+    @Test
+    void skipsWordsLongerThanTheLimit() {
+        String longWord = "а".repeat(WordTokenizer.MAX_WORD_LENGTH + 1);
+        String longestWord = "b".repeat(WordTokenizer.MAX_WORD_LENGTH);
+
+        assertEquals(List.of("до", longestWord, "после"), words("до " + longWord + " " + longestWord + " после"));
+    }
+
+    @Test
+    void detectsLatinWords() {
+        assertTrue(WordTokenizer.isLatin('w'));
+        assertFalse(WordTokenizer.isLatin('ж'));
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        WordTokenizer.forEachWord(text, (buffer, length) -> words.add(new String(buffer, 0, length)));
+        return words;
+    }
+}
@@ -0,0 +1,249 @@
+package searchengine.services.indexers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+import searchengine.exceptions.SiteIndexationErrorException;
+import searchengine.model.IndexEntity;
+import searchengine.model.Lemma;
+import searchengine.model.Page;
+import searchengine.model.SiteEntity;
+import searchengine.services.IndexEntityCRUDService;
+import searchengine.services.LemmaCRUDService;
+import searchengine.services.PageCRUDService;
+import searchengine.services.SiteCRUDService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageBatchWriterTest {
+    private InMemoryDb db;
+    private SiteEntity site;
+    private PageBatchWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        db = new InMemoryDb();
+        site = new SiteEntity();
+        site.setId(1);
+        site.setUrl("https://site.ru/");
+        writer = new PageBatchWriter(db.pages, db.lemmas, db.indexes, db.sites, 1, 16, 1, new CrawlMetrics(), db);
+        writer.loadSite(site);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.shutdownNow();
+    }
+
+    @Test
+    void countsLemmaFrequenciesByPages() throws Exception {
+        assertNull(write(newPage("/a/"), Map.of("кот", 1, "дом", 2)));
+        assertNull(write(newPage("/b/"), Map.of("кот", 3)));
+
+        assertEquals(Map.of("дом", 1, "кот", 2), db.lemmaFrequencies());
+        assertEquals(3, db.indexRows.size());
+    }
+
+    @Test
+    void failedBatchLeavesNoPartialLemmas() throws Exception {
+        assertNull(write(newPage("/a/"), Map.of("кот", 1)));
+
+        db.failIndexWrites = true;
+        RuntimeException error = write(newPage("/b/"), Map.of("кот", 1, "пёс", 1));
+
+        assertTrue(error instanceof SiteIndexationErrorException);
+        assertEquals(Map.of("кот", 1), db.lemmaFrequencies());
+        assertEquals(1, db.pageIds.size());
+    }
+
+    @Test
+    void siteFailsUntilItIsLoadedAgain() throws Exception {
+        db.failIndexWrites = true;
+        assertTrue(write(newPage("/a/"), Map.of("кот", 1)) instanceof SiteIndexationErrorException);
+        db.failIndexWrites = false;
+
+        assertTrue(write(newPage("/b/"), Map.of("кот", 1)) instanceof SiteIndexationErrorException);
+        assertTrue(db.lemmaFrequencies().isEmpty());
+
+        writer.loadSite(site);
+        assertNull(write(newPage("/c/"), Map.of("кот", 1)));
+        assertEquals(Map.of("кот", 1), db.lemmaFrequencies());
+    }
+
+    @Test
+    void replacedPageMovesLemmaFrequencies() throws Exception {
+        Page page = newPage("/a/");
+        assertNull(write(page, Map.of("кот", 1, "дом", 1)));
+        assertNull(write(newPage("/b/"), Map.of("дом", 1)));
+
+        assertNull(write(page, Map.of("дом", 1, "сад", 1))); // the page keeps its id, so it replaces the stored one
+
+        assertEquals(Map.of("дом", 2, "сад", 1), db.lemmaFrequencies());
+        assertEquals(3, db.indexRows.size());
+    }
+
+    @Test
+    void removedPagesTakeTheirLemmasAlong() throws Exception {
+        Page page = newPage("/a/");
+        assertNull(write(page, Map.of("кот", 1, "дом", 1)));
+        assertNull(write(newPage("/b/"), Map.of("дом", 1)));
+
+        writer.removePages(site, List.of(page.getId()));
+
+        assertEquals(Map.of("дом", 1), db.lemmaFrequencies());
+        assertEquals(1, db.pageIds.size());
+        assertEquals(1, db.indexRows.size());
+    }
+
+    private RuntimeException write(Page page, Map<String, Integer> lemmas) throws Exception {
+        CompletableFuture<RuntimeException> written = new CompletableFuture<>();
+        writer.submit(new PageWriteRequest(page, lemmas, written::complete));
+        return written.get(5, TimeUnit.SECONDS);
+    }
+
+    private Page newPage(String path) {
+        Page page = new Page();
+        page.setSite(site);
+        page.setPath(path);
+        page.setContent("");
+        return page;
+    }
+
+    /**
+     * Tables of pages, lemmas and indexes behind the CRUD services, with transactions that
+     * restore the tables when the callback fails.
+     */
+    private static class InMemoryDb implements TransactionOperations {
+        private Set<Integer> pageIds = new HashSet<>();
+        private Map<Integer, Lemma> lemmaRows = new HashMap<>();
+        private List<int[]> indexRows = new ArrayList<>();
+        private int nextId = 1;
+        private volatile boolean failIndexWrites = false;
+
+        private final PageCRUDService pages = new PageCRUDService(null, null) {
+            @Override
+            public void createAll(List<Page> pageList) {
+                for (Page page : pageList) {
+                    if (page.getId() == 0) {
+                        page.setId(nextId++);
+                    }
+                    pageIds.add(page.getId());
+                }
+            }
+
+            @Override
+            public void updateValidators(Page page) {
+            }
+
+            @Override
+            public void deleteAllByIds(List<Integer> ids) {
+                ids.forEach(pageIds::remove);
+                indexRows.removeIf(row -> ids.contains(row[0]));
+            }
+        };
+
+        private final LemmaCRUDService lemmas = new LemmaCRUDService(null, null) {
+            @Override
+            public void createLemmasFromList(List<Lemma> lemmaList) {
+                for (Lemma lemma : lemmaList) {
+                    if (lemma.getId() == 0) {
+                        lemma.setId(nextId++);
+                    }
+                    lemmaRows.put(lemma.getId(), copyOf(lemma));
+                }
+            }
+
+            @Override
+            public void deleteAll(List<Lemma> lemmaList) {
+                lemmaList.forEach(lemma -> lemmaRows.remove(lemma.getId()));
+            }
+
+            @Override
+            public List<Lemma> getLemmasBySiteId(int siteId) {
+                List<Lemma> stored = new ArrayList<>();
+                lemmaRows.values().forEach(lemma -> stored.add(copyOf(lemma)));
+                return stored;
+            }
+        };
+
+        private final IndexEntityCRUDService indexes = new IndexEntityCRUDService(null) {
+            @Override
+            public void createAll(List<IndexEntity> indexList) {
+                if (failIndexWrites) {
+                    throw new IllegalStateException("Connection lost");
+                }
+                for (IndexEntity index : indexList) {
+                    indexRows.add(new int[]{index.getPage().getId(), index.getLemma().getId()});
+                }
+            }
+
+            @Override
+            public List<Integer> findLemmaIdsByPageIds(Collection<Integer> ids) {
+                List<Integer> lemmaIds = new ArrayList<>();
+                for (int[] row : indexRows) {
+                    if (ids.contains(row[0])) {
+                        lemmaIds.add(row[1]);
+                    }
+                }
+                return lemmaIds;
+            }
+
+            @Override
+            public void deleteByPageIds(Collection<Integer> ids) {
+                indexRows.removeIf(row -> ids.contains(row[0]));
+            }
+        };
+
+        private final SiteCRUDService sites = new SiteCRUDService(null) {
+            @Override
+            public void updateById(SiteEntity siteEntity) {
+            }
+        };
+
+        @Override
+        public <T> T execute(TransactionCallback<T> action) {
+            Set<Integer> savedPageIds = new HashSet<>(pageIds);
+            Map<Integer, Lemma> savedLemmaRows = new HashMap<>();
+            lemmaRows.forEach((id, lemma) -> savedLemmaRows.put(id, copyOf(lemma)));
+            List<int[]> savedIndexRows = new ArrayList<>(indexRows);
+            try {
+                return action.doInTransaction(null);
+            } catch (RuntimeException e) {
+                pageIds = savedPageIds;
+                lemmaRows = savedLemmaRows;
+                indexRows = savedIndexRows;
+                throw e;
+            }
+        }
+
+        private Map<String, Integer> lemmaFrequencies() {
+            Map<String, Integer> frequencies = new TreeMap<>();
+            lemmaRows.values().forEach(lemma -> frequencies.put(lemma.getLemma(), lemma.getFrequency()));
+            return frequencies;
+        }
+
+        private static Lemma copyOf(Lemma lemma) {
+            Lemma copy = new Lemma();
+            copy.setId(lemma.getId());
+            copy.setLemma(lemma.getLemma());
+            copy.setSite(lemma.getSite());
+            copy.setFrequency(lemma.getFrequency());
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package searchengine.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimHashTest {
+    private static final String TEXT = "Повторное появление леопарда в Осетии позволяет предположить, что леопард "
+            + "постоянно обитает в некоторых районах Северного Кавказа. Специалисты заповедника установили "
+            + "фотоловушки на тропах и за несколько месяцев получили снимки взрослого самца и двух самок.";
+
+    @Test
+    void countsDifferentBits() {
+        assertEquals(0, SimHash.distance(-1L, -1L));
+        assertEquals(2, SimHash.distance(0b1011L, 0b0001L));
+        assertEquals(64, SimHash.distance(0L, -1L));
+    }
+
+    @Test
+    void ignoresCaseAndPunctuation() {
+        assertEquals(SimHash.of(TEXT), SimHash.of(TEXT.toUpperCase().replace(",", " ;")));
+    }
+
+    @Test
+    void editedTextStaysCloserThanAnotherText() {
+        long original = SimHash.of(TEXT);
+        long edited = SimHash.of(TEXT.replace("двух самок", "трёх самок"));
+        long other = SimHash.of("Новый каталог интернет-магазина включает беговые кроссовки, куртки, рюкзаки "
+                + "и палатки для походов; доставка по городу занимает один день, а самовывоз из пункта выдачи "
+                + "бесплатный для всех заказов дороже двух тысяч рублей.");
+
+        assertTrue(SimHash.distance(original, edited) < SimHash.distance(original, other));
+    }
+
+    @Test
+    void shortTextHasNoFingerprint() {
+        assertNull(SimHash.of("Повторное появление леопарда в Осетии"));
+    }
+}